@@ -11,6 +11,34 @@ import java.util.Optional;
  */
 public abstract class Ast {
 
+    /**
+     * Calls the visitor method for this node's class. This is one virtual
+     * call, rather than a chain of instanceof checks.
+     */
+    public abstract <T> T accept(Visitor<T> visitor);
+
+    // the structural hash, or 0 until it is first computed
+    private int hash;
+
+    /**
+     * Returns a hash of the node's syntax which is consistent with equals,
+     * computed once and then cached. The variables, functions and types set
+     * by the analyzer are left out so the hash doesn't change afterwards,
+     * which means that the lists of children must not be modified once a
+     * node has been hashed.
+     */
+    @Override
+    public final int hashCode() {
+        int hash = this.hash;
+        if (hash == 0) {
+            hash = structuralHash();
+            this.hash = hash;
+        }
+        return hash;
+    }
+
+    abstract int structuralHash();
+
     public static final class Source extends Ast {
 
         private final List<Global> globals;
@@ -29,6 +57,16 @@ public abstract class Ast {
             return functions;
         }
 
+        @Override
+        public <T> T accept(Visitor<T> visitor) {
+            return visitor.visit(this);
+        }
+
+        @Override
+        int structuralHash() {
+            return Objects.hash("Ast.Source", globals, functions);
+        }
+
         @Override
         public boolean equals(Object obj) {
             return obj instanceof Source &&
@@ -94,6 +132,16 @@ public abstract class Ast {
         }
 
 
+        @Override
+        public <T> T accept(Visitor<T> visitor) {
+            return visitor.visit(this);
+        }
+
+        @Override
+        int structuralHash() {
+            return Objects.hash("Ast.Global", name, typeName, mutable, value);
+        }
+
         @Override
         public boolean equals(Object obj) {
             return obj instanceof Global &&
@@ -174,6 +222,16 @@ public abstract class Ast {
         }
 
 
+        @Override
+        public <T> T accept(Visitor<T> visitor) {
+            return visitor.visit(this);
+        }
+
+        @Override
+        int structuralHash() {
+            return Objects.hash("Ast.Function", name, parameters, parameterTypeNames, returnTypeName, statements);
+        }
+
         @Override
         public boolean equals(Object obj) {
             return obj instanceof Ast.Function &&
@@ -214,6 +272,16 @@ public abstract class Ast {
                 return expression;
             }
 
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
+            @Override
+            int structuralHash() {
+                return Objects.hash("Ast.Statement.Expression", expression);
+            }
+
             @Override
             public boolean equals(Object obj) {
                 return obj instanceof Ast.Statement.Expression &&
@@ -270,6 +338,16 @@ public abstract class Ast {
             }
 
 
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
+            @Override
+            int structuralHash() {
+                return Objects.hash("Ast.Statement.Declaration", name, typeName, value);
+            }
+
             @Override
             public boolean equals(Object obj) {
                 return obj instanceof Declaration &&
@@ -309,6 +387,16 @@ public abstract class Ast {
                 return value;
             }
 
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
+            @Override
+            int structuralHash() {
+                return Objects.hash("Ast.Statement.Assignment", receiver, value);
+            }
+
             @Override
             public boolean equals(Object obj) {
                 return obj instanceof Assignment &&
@@ -351,6 +439,16 @@ public abstract class Ast {
                 return elseStatements;
             }
 
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
+            @Override
+            int structuralHash() {
+                return Objects.hash("Ast.Statement.If", condition, thenStatements, elseStatements);
+            }
+
             @Override
             public boolean equals(Object obj) {
                 return obj instanceof If &&
@@ -386,6 +484,16 @@ public abstract class Ast {
 
             public List<Ast.Statement.Case> getCases() { return cases; }
 
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
+            @Override
+            int structuralHash() {
+                return Objects.hash("Ast.Statement.Switch", condition, cases);
+            }
+
             @Override
             public boolean equals(Object obj) {
                 return obj instanceof Switch &&
@@ -421,6 +529,16 @@ public abstract class Ast {
                 return statements;
             }
 
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
+            @Override
+            int structuralHash() {
+                return Objects.hash("Ast.Statement.Case", value, statements);
+            }
+
             @Override
             public boolean equals(Object obj) {
                 return obj instanceof Case &&
@@ -456,6 +574,16 @@ public abstract class Ast {
                 return statements;
             }
 
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
+            @Override
+            int structuralHash() {
+                return Objects.hash("Ast.Statement.While", condition, statements);
+            }
+
             @Override
             public boolean equals(Object obj) {
                 return obj instanceof While &&
@@ -485,6 +613,16 @@ public abstract class Ast {
                 return value;
             }
 
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
+            @Override
+            int structuralHash() {
+                return Objects.hash("Ast.Statement.Return", value);
+            }
+
             @Override
             public boolean equals(Object obj) {
                 return obj instanceof Return &&
@@ -533,9 +671,19 @@ public abstract class Ast {
 
 
 
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
+            @Override
+            int structuralHash() {
+                return Objects.hash("Ast.Expression.Literal", literal);
+            }
+
             @Override
             public boolean equals(Object obj) {
-                return obj instanceof Literal &&
+                return obj == this || obj instanceof Literal &&
                         Objects.equals(literal, ((Literal) obj).literal) &&
                         Objects.equals(type, ((Literal) obj).type);
             }
@@ -576,9 +724,19 @@ public abstract class Ast {
             }
 
 
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
+            @Override
+            int structuralHash() {
+                return Objects.hash("Ast.Expression.Group", expression);
+            }
+
             @Override
             public boolean equals(Object obj) {
-                return obj instanceof Group &&
+                return obj == this || obj instanceof Group &&
                         expression.equals(((Group) obj).expression) &&
                         Objects.equals(type, ((Group) obj).type);
             }
@@ -631,9 +789,19 @@ public abstract class Ast {
                 this.type = type;
             }
 
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
+            @Override
+            int structuralHash() {
+                return Objects.hash("Ast.Expression.Binary", operator, left, right);
+            }
+
             @Override
             public boolean equals(Object obj) {
-                return obj instanceof Binary &&
+                return obj == this || obj instanceof Binary &&
                         operator.equals(((Binary) obj).operator) &&
                         left.equals(((Binary) obj).left) &&
                         right.equals(((Binary) obj).right) &&
@@ -688,9 +856,19 @@ public abstract class Ast {
                 return getVariable().getType();
             }
 
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
+            @Override
+            int structuralHash() {
+                return Objects.hash("Ast.Expression.Access", offset, name);
+            }
+
             @Override
             public boolean equals(Object obj) {
-                return obj instanceof Access &&
+                return obj == this || obj instanceof Access &&
                         offset.equals(((Access) obj).offset) &&
                         name.equals(((Access) obj).name) &&
                         Objects.equals(variable, ((Access) obj).variable);
@@ -743,9 +921,19 @@ public abstract class Ast {
                 return getFunction().getReturnType();
             }
 
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
+            @Override
+            int structuralHash() {
+                return Objects.hash("Ast.Expression.Function", name, arguments);
+            }
+
             @Override
             public boolean equals(Object obj) {
-                return obj instanceof Ast.Expression.Function &&
+                return obj == this || obj instanceof Ast.Expression.Function &&
                         name.equals(((Ast.Expression.Function) obj).name) &&
                         arguments.equals(((Ast.Expression.Function) obj).arguments) &&
                         Objects.equals(function, ((Ast.Expression.Function) obj).function);
@@ -788,9 +976,19 @@ public abstract class Ast {
                 this.type = type;
             }
 
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
+            @Override
+            int structuralHash() {
+                return Objects.hash("Ast.Expression.PlcList", values);
+            }
+
             @Override
             public boolean equals(Object obj) {
-                return obj instanceof Ast.Expression.PlcList &&
+                return obj == this || obj instanceof Ast.Expression.PlcList &&
                         values.equals(((Ast.Expression.PlcList) obj).values) &&
                         Objects.equals(type, ((Ast.Expression.PlcList) obj).type);
             }
@@ -810,43 +1008,7 @@ public abstract class Ast {
     public interface Visitor<T> {
 
         default T visit(Ast ast) {
-            if (ast instanceof Ast.Source) {
-                return visit((Ast.Source) ast);
-            } else if (ast instanceof Ast.Global) {
-                return visit((Ast.Global) ast);
-            } else if (ast instanceof Ast.Function) {
-                return visit((Ast.Function) ast);
-            } else if (ast instanceof Ast.Statement.Expression) {
-                return visit((Ast.Statement.Expression) ast);
-            } else if (ast instanceof Ast.Statement.Declaration) {
-                return visit((Ast.Statement.Declaration) ast);
-            } else if (ast instanceof Ast.Statement.Assignment) {
-                return visit((Ast.Statement.Assignment) ast);
-            } else if (ast instanceof Ast.Statement.If) {
-                return visit((Ast.Statement.If) ast);
-            } else if (ast instanceof Ast.Statement.Switch) {
-                return visit((Ast.Statement.Switch) ast);
-            } else if (ast instanceof Ast.Statement.Case) {
-                return visit((Ast.Statement.Case) ast);
-            } else if (ast instanceof Ast.Statement.While) {
-                return visit((Ast.Statement.While) ast);
-            } else if (ast instanceof Ast.Statement.Return) {
-                return visit((Ast.Statement.Return) ast);
-            } else if (ast instanceof Ast.Expression.Literal) {
-                return visit((Ast.Expression.Literal) ast);
-            } else if (ast instanceof Ast.Expression.Group) {
-                return visit((Ast.Expression.Group) ast);
-            } else if (ast instanceof Ast.Expression.Binary) {
-                return visit((Ast.Expression.Binary) ast);
-            } else if (ast instanceof Ast.Expression.Access) {
-                return visit((Ast.Expression.Access) ast);
-            } else if (ast instanceof Ast.Expression.Function) {
-                return visit((Ast.Expression.Function) ast);
-            } else if (ast instanceof Ast.Expression.PlcList) {
-                return visit((Ast.Expression.PlcList) ast);
-            } else {
-                throw new AssertionError("Unimplemented AST type: " + ast.getClass().getName() + ".");
-            }
+            return ast.accept(this);
         }
 
         T visit(Ast.Source ast);
@@ -0,0 +1,678 @@
+package plc.project;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Stores an AST in one flat int array instead of an object per node. A node
+ * is an offset into the array holding its kind, a fixed number of attributes
+ * for that kind, its number of children and then the offsets of its
+ * children. Names, operators and literal values are attributes which index a
+ * pool of distinct values, so a repeated name is stored once.
+ *
+ * <pre>
+ * kind         attributes                                  children
+ * SOURCE       global count                                globals, functions
+ * GLOBAL       name, type name, mutable                    [value]
+ * FUNCTION     name, return type name, parameters, types   statements
+ * EXPRESSION                                               expression
+ * DECLARATION  name, type name                             [value]
+ * ASSIGNMENT                                               receiver, value
+ * IF           then count                                  condition, then, else
+ * SWITCH                                                   condition, cases
+ * CASE         has value                                   [value], statements
+ * WHILE                                                    condition, statements
+ * RETURN                                                   value
+ * LITERAL      literal
+ * GROUP                                                    expression
+ * BINARY       operator                                    left, right
+ * ACCESS       name                                        [offset]
+ * CALL         name                                        arguments
+ * LIST                                                     values
+ * </pre>
+ *
+ * Children are written before their parents, so the last node is the root
+ * and a traversal reads the array mostly forwards. Missing optional values
+ * are {@link #NONE}. {@link #getAst(int)} materializes a node and its
+ * subtree as the usual {@code Ast} classes for code which needs them, which
+ * doesn't include the analyzer's variables, functions or types.
+ */
+public final class AstArena {
+
+    public static final int NONE = -1;
+
+    public static final int SOURCE = 0;
+    public static final int GLOBAL = 1;
+    public static final int FUNCTION = 2;
+    public static final int EXPRESSION = 3;
+    public static final int DECLARATION = 4;
+    public static final int ASSIGNMENT = 5;
+    public static final int IF = 6;
+    public static final int SWITCH = 7;
+    public static final int CASE = 8;
+    public static final int WHILE = 9;
+    public static final int RETURN = 10;
+    public static final int LITERAL = 11;
+    public static final int GROUP = 12;
+    public static final int BINARY = 13;
+    public static final int ACCESS = 14;
+    public static final int CALL = 15;
+    public static final int LIST = 16;
+
+    private static final int[] ATTRIBUTES = {1, 3, 4, 0, 2, 0, 1, 0, 1, 0, 0, 1, 0, 1, 1, 1, 0};
+
+    // what each kind of node can be the child of, in validate
+    private static final int ROOTS = 0;
+    private static final int GLOBALS = 1;
+    private static final int FUNCTIONS = 2;
+    private static final int STATEMENTS = 3;
+    private static final int CASES = 4;
+    private static final int EXPRESSIONS = 5;
+    private static final int[] ROLES = {ROOTS, GLOBALS, FUNCTIONS, STATEMENTS, STATEMENTS, STATEMENTS, STATEMENTS, STATEMENTS,
+            CASES, STATEMENTS, STATEMENTS, EXPRESSIONS, EXPRESSIONS, EXPRESSIONS, EXPRESSIONS, EXPRESSIONS, EXPRESSIONS};
+
+    // tags for the literal pool in write and read
+    private static final byte NULL = 0;
+    private static final byte STRING = 1;
+    private static final byte INTEGER = 2;
+    private static final byte DECIMAL = 3;
+    private static final byte CHARACTER = 4;
+    private static final byte BOOLEAN = 5;
+    private static final byte NAMES = 6;
+
+    private int[] nodes = new int[64];
+    private int size = 0;
+    private int count = 0;
+    private int root = NONE;
+    private final List<Object> literals = new ArrayList<>();
+    private final Map<Object, Integer> literalIndex = new HashMap<>();
+    // nodes materialized by getAst, so that a node always has the same view
+    private Ast[] views;
+
+    /**
+     * Flattens the given source into a new arena.
+     */
+    public static AstArena of(Ast.Source source) {
+        AstArena arena = new AstArena();
+        arena.root = new Flattener(arena).visit(source);
+        return arena;
+    }
+
+    public int getRoot() {
+        return root;
+    }
+
+    public int getNodeCount() {
+        return count;
+    }
+
+    /**
+     * Returns the number of ints used by the nodes.
+     */
+    public int size() {
+        return size;
+    }
+
+    public int getKind(int node) {
+        return nodes[node];
+    }
+
+    public int getChildCount(int node) {
+        return nodes[node + 1 + ATTRIBUTES[nodes[node]]];
+    }
+
+    public int getChild(int node, int index) {
+        int children = node + 2 + ATTRIBUTES[nodes[node]];
+        if (index < 0 || index >= nodes[children - 1]) {
+            throw new IndexOutOfBoundsException("Child " + index + " of node " + node + ".");
+        }
+        return nodes[children + index];
+    }
+
+    /**
+     * Returns the name of a global, function, declaration, access or call, or
+     * the operator of a binary expression.
+     */
+    public String getName(int node) {
+        switch (nodes[node]) {
+            case GLOBAL:
+            case FUNCTION:
+            case DECLARATION:
+            case BINARY:
+            case ACCESS:
+            case CALL:
+                return (String) literals.get(nodes[node + 1]);
+            default:
+                throw new IllegalArgumentException("Node " + node + " has no name.");
+        }
+    }
+
+    public Object getLiteral(int node) {
+        if (nodes[node] != LITERAL) {
+            throw new IllegalArgumentException("Node " + node + " is not a literal.");
+        }
+        return literals.get(nodes[node + 1]);
+    }
+
+    public Ast.Source getSource() {
+        return (Ast.Source) getAst(root);
+    }
+
+    /**
+     * Returns the node as an {@code Ast}, building it and any of its subtree
+     * which hasn't been built yet. Later calls return the same object.
+     */
+    public Ast getAst(int node) {
+        if (views == null || views.length < size) {
+            views = views == null ? new Ast[size] : Arrays.copyOf(views, size);
+        }
+        if (views[node] == null) {
+            views[node] = materialize(node);
+        }
+        return views[node];
+    }
+
+    /**
+     * Writes the node array and literal pool for {@link AstCache}.
+     */
+    void write(DataOutputStream out) throws IOException {
+        out.writeInt(root);
+        out.writeInt(count);
+        out.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            out.writeInt(nodes[i]);
+        }
+        out.writeInt(literals.size());
+        for (Object literal : literals) {
+            writeLiteral(out, literal);
+        }
+    }
+
+    /**
+     * Reads an arena written by {@link #write(DataOutputStream)} from the
+     * buffer's position. Throws an {@code IllegalArgumentException} if the
+     * buffer doesn't hold a well-formed arena, so that a corrupted entry
+     * fails here rather than when its nodes are materialized.
+     */
+    static AstArena read(ByteBuffer buffer) {
+        AstArena arena = new AstArena();
+        arena.root = buffer.getInt();
+        arena.count = buffer.getInt();
+        arena.size = length(buffer, 4);
+        arena.nodes = new int[Math.max(arena.size, 1)];
+        buffer.asIntBuffer().get(arena.nodes, 0, arena.size);
+        buffer.position(buffer.position() + 4 * arena.size);
+        // every literal takes at least its tag byte
+        int literals = length(buffer, 1);
+        for (int i = 0; i < literals; i++) {
+            arena.literal(readLiteral(buffer));
+        }
+        arena.validate();
+        return arena;
+    }
+
+    /**
+     * Checks that the nodes form a tree whose children come before their
+     * parents and are the kind their parents expect, and whose attributes
+     * refer to literals of the right kind.
+     */
+    private void validate() {
+        boolean[] starts = new boolean[size];
+        int found = 0;
+        int node = 0;
+        while (node < size) {
+            int kind = nodes[node];
+            check(kind >= SOURCE && kind <= LIST, node);
+            int children = node + 1 + ATTRIBUTES[kind];
+            check(children < size, node);
+            int childCount = nodes[children];
+            check(childCount >= 0 && childCount < size - children, node);
+            for (int i = 1; i <= childCount; i++) {
+                int child = nodes[children + i];
+                check(child >= 0 && child < node && starts[child], node);
+            }
+            validateAttributes(node, kind, childCount);
+            for (int i = 0; i < childCount; i++) {
+                check(ROLES[nodes[nodes[children + 1 + i]]] == role(node, kind, i), node);
+            }
+            starts[node] = true;
+            found++;
+            node = children + 1 + childCount;
+        }
+        check(found == count && root >= 0 && root < size && starts[root] && nodes[root] == SOURCE, root);
+    }
+
+    private void validateAttributes(int node, int kind, int childCount) {
+        int attributes = node + 1;
+        switch (kind) {
+            case SOURCE:
+                check(nodes[attributes] >= 0 && nodes[attributes] <= childCount, node);
+                break;
+            case GLOBAL:
+                check(literal(nodes[attributes], String.class) && name(nodes[attributes + 1]) && childCount <= 1, node);
+                break;
+            case FUNCTION:
+                check(literal(nodes[attributes], String.class) && name(nodes[attributes + 1])
+                        && literal(nodes[attributes + 2], List.class) && literal(nodes[attributes + 3], List.class), node);
+                break;
+            case DECLARATION:
+                check(literal(nodes[attributes], String.class) && name(nodes[attributes + 1]) && childCount <= 1, node);
+                break;
+            case IF:
+                check(childCount >= 1 && nodes[attributes] >= 0 && nodes[attributes] < childCount, node);
+                break;
+            case CASE:
+                check((nodes[attributes] == 0 || nodes[attributes] == 1) && nodes[attributes] <= childCount, node);
+                break;
+            case LITERAL:
+                check(nodes[attributes] >= 0 && nodes[attributes] < literals.size(), node);
+                break;
+            case BINARY:
+                check(literal(nodes[attributes], String.class) && childCount == 2, node);
+                break;
+            case ACCESS:
+                check(literal(nodes[attributes], String.class) && childCount <= 1, node);
+                break;
+            case CALL:
+                check(literal(nodes[attributes], String.class), node);
+                break;
+            case EXPRESSION:
+            case RETURN:
+            case GROUP:
+                check(childCount == 1, node);
+                break;
+            case ASSIGNMENT:
+                check(childCount == 2, node);
+                break;
+            case SWITCH:
+            case WHILE:
+                check(childCount >= 1, node);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Returns the role the child at the given index of a node must have, so
+     * that a node materializes as the class its parent casts it to.
+     */
+    private int role(int node, int kind, int index) {
+        switch (kind) {
+            case SOURCE:
+                return index < nodes[node + 1] ? GLOBALS : FUNCTIONS;
+            case FUNCTION:
+                return STATEMENTS;
+            case IF:
+            case WHILE:
+                return index == 0 ? EXPRESSIONS : STATEMENTS;
+            case SWITCH:
+                return index == 0 ? EXPRESSIONS : CASES;
+            case CASE:
+                return index < nodes[node + 1] ? EXPRESSIONS : STATEMENTS;
+            default:
+                return EXPRESSIONS;
+        }
+    }
+
+    private boolean literal(int literal, Class<?> type) {
+        return literal >= 0 && literal < literals.size() && type.isInstance(literals.get(literal));
+    }
+
+    private boolean name(int literal) {
+        return literal == NONE || literal(literal, String.class);
+    }
+
+    private static void check(boolean condition, int node) {
+        if (!condition) {
+            throw new IllegalArgumentException("Malformed node " + node + ".");
+        }
+    }
+
+    /**
+     * Reads a length, checking that the buffer has room for that many items
+     * of at least the given number of bytes.
+     */
+    static int length(ByteBuffer buffer, int bytes) {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining() / bytes) {
+            throw new IllegalArgumentException("Invalid length " + length + ".");
+        }
+        return length;
+    }
+
+    private static void writeLiteral(DataOutputStream out, Object literal) throws IOException {
+        if (literal == null) {
+            out.writeByte(NULL);
+        }
+        else if (literal instanceof String) {
+            out.writeByte(STRING);
+            writeString(out, (String) literal);
+        }
+        else if (literal instanceof BigInteger) {
+            out.writeByte(INTEGER);
+            writeBytes(out, ((BigInteger) literal).toByteArray());
+        }
+        else if (literal instanceof BigDecimal) {
+            out.writeByte(DECIMAL);
+            out.writeInt(((BigDecimal) literal).scale());
+            writeBytes(out, ((BigDecimal) literal).unscaledValue().toByteArray());
+        }
+        else if (literal instanceof Character) {
+            out.writeByte(CHARACTER);
+            out.writeChar((Character) literal);
+        }
+        else if (literal instanceof Boolean) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean((Boolean) literal);
+        }
+        else if (literal instanceof List) {
+            out.writeByte(NAMES);
+            out.writeInt(((List<?>) literal).size());
+            for (Object name : (List<?>) literal) {
+                writeString(out, (String) name);
+            }
+        }
+        else {
+            throw new IllegalArgumentException("Can't write a literal of " + literal.getClass().getName() + ".");
+        }
+    }
+
+    private static Object readLiteral(ByteBuffer buffer) {
+        byte tag = buffer.get();
+        switch (tag) {
+            case NULL:
+                return null;
+            case STRING:
+                return readString(buffer);
+            case INTEGER:
+                return new BigInteger(readBytes(buffer));
+            case DECIMAL:
+                int scale = buffer.getInt();
+                return new BigDecimal(new BigInteger(readBytes(buffer)), scale);
+            case CHARACTER:
+                return buffer.getChar();
+            case BOOLEAN:
+                return buffer.get() != 0;
+            case NAMES:
+                // every name takes at least its length
+                int length = length(buffer, 4);
+                List<String> names = new ArrayList<>(length);
+                for (int i = 0; i < length; i++) {
+                    names.add(readString(buffer));
+                }
+                return List.copyOf(names);
+            default:
+                throw new IllegalArgumentException("Unknown literal tag " + tag + ".");
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        writeBytes(out, string.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        return new String(readBytes(buffer), StandardCharsets.UTF_8);
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[length(buffer, 1)];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private Ast materialize(int node) {
+        int attributes = node + 1;
+        int children = attributes + ATTRIBUTES[nodes[node]] + 1;
+        int count = nodes[children - 1];
+        switch (nodes[node]) {
+            case SOURCE:
+                return new Ast.Source(views(children, nodes[attributes]), views(children + nodes[attributes], count - nodes[attributes]));
+            case GLOBAL:
+                return new Ast.Global(string(nodes[attributes]), string(nodes[attributes + 1]), nodes[attributes + 2] != 0, optional(children, count));
+            case FUNCTION:
+                return new Ast.Function(string(nodes[attributes]), strings(nodes[attributes + 2]), strings(nodes[attributes + 3]),
+                        Optional.ofNullable(string(nodes[attributes + 1])), views(children, count));
+            case EXPRESSION:
+                return new Ast.Statement.Expression(expression(children));
+            case DECLARATION:
+                return new Ast.Statement.Declaration(string(nodes[attributes]), Optional.ofNullable(string(nodes[attributes + 1])), optional(children, count));
+            case ASSIGNMENT:
+                return new Ast.Statement.Assignment(expression(children), expression(children + 1));
+            case IF:
+                return new Ast.Statement.If(expression(children), views(children + 1, nodes[attributes]), views(children + 1 + nodes[attributes], count - 1 - nodes[attributes]));
+            case SWITCH:
+                return new Ast.Statement.Switch(expression(children), views(children + 1, count - 1));
+            case CASE:
+                int value = nodes[attributes];
+                return new Ast.Statement.Case(optional(children, value), views(children + value, count - value));
+            case WHILE:
+                return new Ast.Statement.While(expression(children), views(children + 1, count - 1));
+            case RETURN:
+                return new Ast.Statement.Return(expression(children));
+            case LITERAL:
+                return new Ast.Expression.Literal(literals.get(nodes[attributes]));
+            case GROUP:
+                return new Ast.Expression.Group(expression(children));
+            case BINARY:
+                return new Ast.Expression.Binary(string(nodes[attributes]), expression(children), expression(children + 1));
+            case ACCESS:
+                return new Ast.Expression.Access(optional(children, count), string(nodes[attributes]));
+            case CALL:
+                return new Ast.Expression.Function(string(nodes[attributes]), views(children, count));
+            case LIST:
+                return new Ast.Expression.PlcList(views(children, count));
+            default:
+                throw new AssertionError("Unknown node kind " + nodes[node] + ".");
+        }
+    }
+
+    private Ast.Expression expression(int child) {
+        return (Ast.Expression) getAst(nodes[child]);
+    }
+
+    private Optional<Ast.Expression> optional(int child, int count) {
+        return count == 0 ? Optional.empty() : Optional.of(expression(child));
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T extends Ast> List<T> views(int child, int count) {
+        List<T> list = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            list.add((T) getAst(nodes[child + i]));
+        }
+        return list;
+    }
+
+    private String string(int literal) {
+        return literal == NONE ? null : (String) literals.get(literal);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<String> strings(int literal) {
+        return new ArrayList<>((List<String>) literals.get(literal));
+    }
+
+    private int literal(Object value) {
+        Integer index = literalIndex.get(value);
+        if (index == null) {
+            index = literals.size();
+            literals.add(value);
+            literalIndex.put(value, index);
+        }
+        return index;
+    }
+
+    private int add(int kind, int[] attributes, int[] children) {
+        int node = size;
+        int length = 2 + attributes.length + children.length;
+        if (size + length > nodes.length) {
+            nodes = Arrays.copyOf(nodes, Math.max(nodes.length * 2, size + length));
+        }
+        nodes[size++] = kind;
+        for (int attribute : attributes) {
+            nodes[size++] = attribute;
+        }
+        nodes[size++] = children.length;
+        for (int child : children) {
+            nodes[size++] = child;
+        }
+        count++;
+        return node;
+    }
+
+    /**
+     * Adds each node to the arena after its children, returning its offset.
+     */
+    private static final class Flattener implements Ast.Visitor<Integer> {
+
+        private static final int[] EMPTY = new int[0];
+
+        private final AstArena arena;
+
+        private Flattener(AstArena arena) {
+            this.arena = arena;
+        }
+
+        @Override
+        public Integer visit(Ast.Source ast) {
+            List<Ast> children = new ArrayList<>(ast.getGlobals());
+            children.addAll(ast.getFunctions());
+            return arena.add(SOURCE, new int[] {ast.getGlobals().size()}, visitAll(children));
+        }
+
+        @Override
+        public Integer visit(Ast.Global ast) {
+            int[] attributes = {arena.literal(ast.getName()), name(ast.getTypeName()), ast.getMutable() ? 1 : 0};
+            return arena.add(GLOBAL, attributes, visitOptional(ast.getValue()));
+        }
+
+        @Override
+        public Integer visit(Ast.Function ast) {
+            int[] attributes = {
+                    arena.literal(ast.getName()),
+                    name(ast.getReturnTypeName().orElse(null)),
+                    arena.literal(List.copyOf(ast.getParameters())),
+                    arena.literal(List.copyOf(ast.getParameterTypeNames()))
+            };
+            return arena.add(FUNCTION, attributes, visitAll(ast.getStatements()));
+        }
+
+        @Override
+        public Integer visit(Ast.Statement.Expression ast) {
+            return arena.add(EXPRESSION, EMPTY, new int[] {visit(ast.getExpression())});
+        }
+
+        @Override
+        public Integer visit(Ast.Statement.Declaration ast) {
+            int[] attributes = {arena.literal(ast.getName()), name(ast.getTypeName().orElse(null))};
+            return arena.add(DECLARATION, attributes, visitOptional(ast.getValue()));
+        }
+
+        @Override
+        public Integer visit(Ast.Statement.Assignment ast) {
+            return arena.add(ASSIGNMENT, EMPTY, new int[] {visit(ast.getReceiver()), visit(ast.getValue())});
+        }
+
+        @Override
+        public Integer visit(Ast.Statement.If ast) {
+            List<Ast> children = new ArrayList<>();
+            children.add(ast.getCondition());
+            children.addAll(ast.getThenStatements());
+            children.addAll(ast.getElseStatements());
+            return arena.add(IF, new int[] {ast.getThenStatements().size()}, visitAll(children));
+        }
+
+        @Override
+        public Integer visit(Ast.Statement.Switch ast) {
+            List<Ast> children = new ArrayList<>();
+            children.add(ast.getCondition());
+            children.addAll(ast.getCases());
+            return arena.add(SWITCH, EMPTY, visitAll(children));
+        }
+
+        @Override
+        public Integer visit(Ast.Statement.Case ast) {
+            List<Ast> children = new ArrayList<>();
+            ast.getValue().ifPresent(children::add);
+            children.addAll(ast.getStatements());
+            return arena.add(CASE, new int[] {ast.getValue().isPresent() ? 1 : 0}, visitAll(children));
+        }
+
+        @Override
+        public Integer visit(Ast.Statement.While ast) {
+            List<Ast> children = new ArrayList<>();
+            children.add(ast.getCondition());
+            children.addAll(ast.getStatements());
+            return arena.add(WHILE, EMPTY, visitAll(children));
+        }
+
+        @Override
+        public Integer visit(Ast.Statement.Return ast) {
+            return arena.add(RETURN, EMPTY, new int[] {visit(ast.getValue())});
+        }
+
+        @Override
+        public Integer visit(Ast.Expression.Literal ast) {
+            return arena.add(LITERAL, new int[] {arena.literal(ast.getLiteral())}, EMPTY);
+        }
+
+        @Override
+        public Integer visit(Ast.Expression.Group ast) {
+            return arena.add(GROUP, EMPTY, new int[] {visit(ast.getExpression())});
+        }
+
+        @Override
+        public Integer visit(Ast.Expression.Binary ast) {
+            return arena.add(BINARY, new int[] {arena.literal(ast.getOperator())}, new int[] {visit(ast.getLeft()), visit(ast.getRight())});
+        }
+
+        @Override
+        public Integer visit(Ast.Expression.Access ast) {
+            return arena.add(ACCESS, new int[] {arena.literal(ast.getName())}, visitOptional(ast.getOffset()));
+        }
+
+        @Override
+        public Integer visit(Ast.Expression.Function ast) {
+            return arena.add(CALL, new int[] {arena.literal(ast.getName())}, visitAll(ast.getArguments()));
+        }
+
+        @Override
+        public Integer visit(Ast.Expression.PlcList ast) {
+            return arena.add(LIST, EMPTY, visitAll(ast.getValues()));
+        }
+
+        private int name(String name) {
+            return name == null ? NONE : arena.literal(name);
+        }
+
+        private int[] visitOptional(Optional<Ast.Expression> value) {
+            return value.isPresent() ? new int[] {visit(value.get())} : EMPTY;
+        }
+
+        private int[] visitAll(List<? extends Ast> children) {
+            int[] offsets = new int[children.size()];
+            for (int i = 0; i < offsets.length; i++) {
+                offsets[i] = visit(children.get(i));
+            }
+            return offsets;
+        }
+
+    }
+
+}
@@ -0,0 +1,150 @@
+package plc.project;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Caches parsed sources on disk, so that a source which hasn't changed since
+ * it was last parsed is loaded without lexing or parsing it. Entries are
+ * files named by the SHA-256 hash of the source, holding its tokens and its
+ * {@link AstArena}, and are read through a memory-mapped buffer.
+ *
+ * <pre>
+ * int     magic, version, source length
+ * tokens  count, types (bytes), starts, lengths
+ * arena   root, node count, size, nodes, literal count, literals
+ * </pre>
+ *
+ * An entry which can't be read, such as one written by another version, is
+ * parsed again and replaced. Sources which don't lex or parse aren't cached.
+ */
+public final class AstCache {
+
+    private static final int MAGIC = 0x504C4341;
+    private static final int VERSION = 1;
+
+    private final Path directory;
+
+    public AstCache(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Returns the tokens and AST of the source, from the cache if it has an
+     * entry for it and otherwise by lexing and parsing it and adding one.
+     */
+    public Entry load(String source) throws IOException {
+        Path path = directory.resolve(hash(source) + ".ast");
+        if (Files.exists(path)) {
+            Entry entry = read(path, source);
+            if (entry != null) {
+                return entry;
+            }
+        }
+        TokenBuffer tokens = new Lexer(source).lexCompact();
+        AstArena arena = AstArena.of(new Parser(tokens).parseSource());
+        write(path, source, tokens, arena);
+        return new Entry(tokens, arena, false);
+    }
+
+    private static Entry read(Path path, String source) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION || buffer.getInt() != source.length()) {
+                return null;
+            }
+            TokenBuffer tokens = TokenBuffer.read(buffer, source);
+            AstArena arena = AstArena.read(buffer);
+            return new Entry(tokens, arena, true);
+        } catch (BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException e) {
+            return null;
+        }
+    }
+
+    private void write(Path path, String source, TokenBuffer tokens, AstArena arena) throws IOException {
+        Files.createDirectories(directory);
+        // write to a temporary file first so that a reader never sees part
+        // of an entry
+        Path temporary = Files.createTempFile(directory, "entry", ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(source.length());
+            tokens.write(out);
+            arena.write(out);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+        try {
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+    }
+
+    private static String hash(String source) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(source.getBytes(StandardCharsets.UTF_8));
+            StringBuilder builder = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError("SHA-256 is always available.", e);
+        }
+    }
+
+    /**
+     * The tokens and AST of a source. The tokens map token indices back to
+     * positions in the source; for entries read from the cache their symbol
+     * ids are resolved lazily.
+     */
+    public static final class Entry {
+
+        private final TokenBuffer tokens;
+        private final AstArena arena;
+        private final boolean cached;
+
+        private Entry(TokenBuffer tokens, AstArena arena, boolean cached) {
+            this.tokens = tokens;
+            this.arena = arena;
+            this.cached = cached;
+        }
+
+        public TokenBuffer getTokens() {
+            return tokens;
+        }
+
+        public AstArena getArena() {
+            return arena;
+        }
+
+        public Ast.Source getAst() {
+            return arena.getSource();
+        }
+
+        /**
+         * Returns {@code true} if the entry was read from the cache rather than
+         * parsed.
+         */
+        public boolean isCached() {
+            return cached;
+        }
+
+    }
+
+}
@@ -0,0 +1,185 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Hash-conses expressions, so that structurally equal expressions interned
+ * by the same interner are the same object. Children are interned before
+ * their parents, which means a lookup only compares children by identity,
+ * and repeated literals, accesses and larger subexpressions are stored once.
+ *
+ * Only expressions are shared; statements and declarations are rebuilt
+ * around them. A shared node can only hold one set of analyzer results, so
+ * intern trees which are interpreted or used as keys rather than ones which
+ * will be passed to the {@link Analyzer}. An interner is not thread-safe.
+ */
+public final class AstInterner {
+
+    private final Map<Ast.Expression, Ast.Expression> expressions = new HashMap<>();
+    private final Rebuilder rebuilder = new Rebuilder();
+
+    /**
+     * Returns a copy of the source whose expressions are all interned.
+     */
+    public Ast.Source intern(Ast.Source source) {
+        return (Ast.Source) rebuilder.visit(source);
+    }
+
+    /**
+     * Returns the interned expression equal to the given one, interning it
+     * and its subexpressions if they haven't been seen.
+     */
+    public Ast.Expression intern(Ast.Expression expression) {
+        Ast.Expression rebuilt = (Ast.Expression) rebuilder.visit(expression);
+        Ast.Expression interned = expressions.putIfAbsent(rebuilt, rebuilt);
+        return interned != null ? interned : rebuilt;
+    }
+
+    /**
+     * Returns the number of distinct expressions interned.
+     */
+    public int size() {
+        return expressions.size();
+    }
+
+    private Optional<Ast.Expression> intern(Optional<Ast.Expression> expression) {
+        return expression.isPresent() ? Optional.of(intern(expression.get())) : expression;
+    }
+
+    private List<Ast.Expression> internAll(List<Ast.Expression> expressions) {
+        List<Ast.Expression> interned = new ArrayList<>(expressions.size());
+        for (Ast.Expression expression : expressions) {
+            interned.add(intern(expression));
+        }
+        return interned;
+    }
+
+    private static boolean same(List<Ast.Expression> first, List<Ast.Expression> second) {
+        for (int i = 0; i < first.size(); i++) {
+            if (first.get(i) != second.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Rebuilds statements around interned expressions, and expressions around
+     * interned children. An expression whose children were already interned
+     * is returned as is.
+     */
+    private final class Rebuilder implements Ast.Visitor<Ast> {
+
+        @Override
+        public Ast visit(Ast.Source ast) {
+            return new Ast.Source(visitAll(ast.getGlobals()), visitAll(ast.getFunctions()));
+        }
+
+        @Override
+        public Ast visit(Ast.Global ast) {
+            return new Ast.Global(ast.getName(), ast.getTypeName(), ast.getMutable(), intern(ast.getValue()));
+        }
+
+        @Override
+        public Ast visit(Ast.Function ast) {
+            return new Ast.Function(ast.getName(), ast.getParameters(), ast.getParameterTypeNames(), ast.getReturnTypeName(), visitAll(ast.getStatements()));
+        }
+
+        @Override
+        public Ast visit(Ast.Statement.Expression ast) {
+            return new Ast.Statement.Expression(intern(ast.getExpression()));
+        }
+
+        @Override
+        public Ast visit(Ast.Statement.Declaration ast) {
+            return new Ast.Statement.Declaration(ast.getName(), ast.getTypeName(), intern(ast.getValue()));
+        }
+
+        @Override
+        public Ast visit(Ast.Statement.Assignment ast) {
+            return new Ast.Statement.Assignment(intern(ast.getReceiver()), intern(ast.getValue()));
+        }
+
+        @Override
+        public Ast visit(Ast.Statement.If ast) {
+            return new Ast.Statement.If(intern(ast.getCondition()), visitAll(ast.getThenStatements()), visitAll(ast.getElseStatements()));
+        }
+
+        @Override
+        public Ast visit(Ast.Statement.Switch ast) {
+            return new Ast.Statement.Switch(intern(ast.getCondition()), visitAll(ast.getCases()));
+        }
+
+        @Override
+        public Ast visit(Ast.Statement.Case ast) {
+            return new Ast.Statement.Case(intern(ast.getValue()), visitAll(ast.getStatements()));
+        }
+
+        @Override
+        public Ast visit(Ast.Statement.While ast) {
+            return new Ast.Statement.While(intern(ast.getCondition()), visitAll(ast.getStatements()));
+        }
+
+        @Override
+        public Ast visit(Ast.Statement.Return ast) {
+            return new Ast.Statement.Return(intern(ast.getValue()));
+        }
+
+        @Override
+        public Ast visit(Ast.Expression.Literal ast) {
+            return ast;
+        }
+
+        @Override
+        public Ast visit(Ast.Expression.Group ast) {
+            Ast.Expression expression = intern(ast.getExpression());
+            return expression == ast.getExpression() ? ast : new Ast.Expression.Group(expression);
+        }
+
+        @Override
+        public Ast visit(Ast.Expression.Binary ast) {
+            Ast.Expression left = intern(ast.getLeft());
+            Ast.Expression right = intern(ast.getRight());
+            if (left == ast.getLeft() && right == ast.getRight()) {
+                return ast;
+            }
+            return new Ast.Expression.Binary(ast.getOperator(), left, right);
+        }
+
+        @Override
+        public Ast visit(Ast.Expression.Access ast) {
+            if (ast.getOffset().isEmpty()) {
+                return ast;
+            }
+            Ast.Expression offset = intern(ast.getOffset().get());
+            return offset == ast.getOffset().get() ? ast : new Ast.Expression.Access(Optional.of(offset), ast.getName());
+        }
+
+        @Override
+        public Ast visit(Ast.Expression.Function ast) {
+            List<Ast.Expression> arguments = internAll(ast.getArguments());
+            return same(arguments, ast.getArguments()) ? ast : new Ast.Expression.Function(ast.getName(), arguments);
+        }
+
+        @Override
+        public Ast visit(Ast.Expression.PlcList ast) {
+            List<Ast.Expression> values = internAll(ast.getValues());
+            return same(values, ast.getValues()) ? ast : new Ast.Expression.PlcList(values);
+        }
+
+        @SuppressWarnings("unchecked")
+        private <T extends Ast> List<T> visitAll(List<T> nodes) {
+            List<T> rebuilt = new ArrayList<>(nodes.size());
+            for (T node : nodes) {
+                rebuilt.add((T) visit(node));
+            }
+            return rebuilt;
+        }
+
+    }
+
+}
@@ -0,0 +1,253 @@
+package plc.project;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Limits how much work a script may do: how many loop iterations it runs,
+ * how many nodes it evaluates and how long it takes. A budget only holds the
+ * limits, and can be shared; each run {@link #start() starts} its own
+ * {@link Meter}, which the {@link Interpreter} and compiled code charge as
+ * they go and which aborts the run by throwing an {@link Aborted} once any
+ * limit is exceeded. Code run without a meter is never charged at all.
+ *
+ * The meter is only charged on the back-edges of loops and on calls, which
+ * is where a script can spend unbounded time. An iteration charges every
+ * node of the loop's condition and body, and a call every node of the
+ * function's body, whether or not each of them is evaluated. The time, and
+ * whether the run was cancelled or its thread interrupted, are checked every
+ * few hundred charges, so a run may overrun its time by that many.
+ */
+public final class Budget {
+
+    /**
+     * A budget without limits, whose meters can still be cancelled.
+     */
+    public static final Budget UNLIMITED = new Budget(Long.MAX_VALUE, Long.MAX_VALUE, null);
+
+    // the charges between checks of the clock and of cancellation
+    private static final int CHECK_INTERVAL = 256;
+
+    private final long iterations;
+    private final long nodes;
+    private final Duration time;
+
+    private Budget(long iterations, long nodes, Duration time) {
+        this.iterations = iterations;
+        this.nodes = nodes;
+        this.time = time;
+    }
+
+    public Budget withIterations(long iterations) {
+        return new Budget(iterations, nodes, time);
+    }
+
+    public Budget withNodes(long nodes) {
+        return new Budget(iterations, nodes, time);
+    }
+
+    public Budget withTime(Duration time) {
+        return new Budget(iterations, nodes, time);
+    }
+
+    /**
+     * Starts a meter for one run, whose time starts now.
+     */
+    public Meter start() {
+        return new Meter(this);
+    }
+
+    /**
+     * Returns the number of nodes in some ASTs, which is what a meter is
+     * charged for evaluating them.
+     */
+    static int size(List<? extends Ast> asts) {
+        int size = 0;
+        for (Ast ast : asts) {
+            size += Counter.INSTANCE.visit(ast);
+        }
+        return size;
+    }
+
+    static int size(Ast ast) {
+        return Counter.INSTANCE.visit(ast);
+    }
+
+    /**
+     * What one run has left of its budget. A meter is charged by the thread
+     * running its script, and may be cancelled from any other.
+     */
+    public static final class Meter {
+
+        private final Budget budget;
+        private final long deadline;
+        private long iterations;
+        private long nodes;
+        private int countdown = CHECK_INTERVAL;
+        private volatile boolean cancelled;
+
+        private Meter(Budget budget) {
+            this.budget = budget;
+            this.deadline = budget.time == null ? 0 : System.nanoTime() + budget.time.toNanos();
+            this.iterations = budget.iterations;
+            this.nodes = budget.nodes;
+        }
+
+        /**
+         * Asks the run to stop, which it does the next time it checks.
+         */
+        public void cancel() {
+            cancelled = true;
+        }
+
+        /**
+         * Charges one iteration of a loop, about to evaluate the given number
+         * of nodes.
+         */
+        void iterate(int size) {
+            if (--iterations < 0) {
+                throw new Aborted("The script exceeded its budget of " + budget.iterations + " loop iterations.");
+            }
+            charge(size);
+        }
+
+        /**
+         * Charges a call to a function whose body has the given number of
+         * nodes.
+         */
+        void call(int size) {
+            charge(size);
+        }
+
+        private void charge(int size) {
+            nodes -= size;
+            if (nodes < 0) {
+                throw new Aborted("The script exceeded its budget of " + budget.nodes + " nodes.");
+            }
+            if (--countdown == 0) {
+                check();
+            }
+        }
+
+        private void check() {
+            countdown = CHECK_INTERVAL;
+            if (cancelled || Thread.currentThread().isInterrupted()) {
+                throw new Aborted("The script was cancelled.");
+            }
+            if (budget.time != null && System.nanoTime() - deadline > 0) {
+                throw new Aborted("The script exceeded its budget of " + budget.time.toMillis() + "ms.");
+            }
+        }
+
+    }
+
+    /**
+     * Thrown to end a run which exceeded its budget or was cancelled.
+     */
+    public static final class Aborted extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        public Aborted(String message) {
+            super(message);
+        }
+
+    }
+
+    private static final class Counter implements Ast.Visitor<Integer> {
+
+        private static final Counter INSTANCE = new Counter();
+
+        @Override
+        public Integer visit(Ast.Source ast) {
+            return 1 + size(ast.getGlobals()) + size(ast.getFunctions());
+        }
+
+        @Override
+        public Integer visit(Ast.Global ast) {
+            return 1 + optional(ast.getValue());
+        }
+
+        @Override
+        public Integer visit(Ast.Function ast) {
+            return 1 + size(ast.getStatements());
+        }
+
+        @Override
+        public Integer visit(Ast.Statement.Expression ast) {
+            return 1 + size(ast.getExpression());
+        }
+
+        @Override
+        public Integer visit(Ast.Statement.Declaration ast) {
+            return 1 + optional(ast.getValue());
+        }
+
+        @Override
+        public Integer visit(Ast.Statement.Assignment ast) {
+            return 1 + size(ast.getReceiver()) + size(ast.getValue());
+        }
+
+        @Override
+        public Integer visit(Ast.Statement.If ast) {
+            return 1 + size(ast.getCondition()) + size(ast.getThenStatements()) + size(ast.getElseStatements());
+        }
+
+        @Override
+        public Integer visit(Ast.Statement.Switch ast) {
+            return 1 + size(ast.getCondition()) + size(ast.getCases());
+        }
+
+        @Override
+        public Integer visit(Ast.Statement.Case ast) {
+            return 1 + optional(ast.getValue()) + size(ast.getStatements());
+        }
+
+        @Override
+        public Integer visit(Ast.Statement.While ast) {
+            return 1 + size(ast.getCondition()) + size(ast.getStatements());
+        }
+
+        @Override
+        public Integer visit(Ast.Statement.Return ast) {
+            return 1 + size(ast.getValue());
+        }
+
+        @Override
+        public Integer visit(Ast.Expression.Literal ast) {
+            return 1;
+        }
+
+        @Override
+        public Integer visit(Ast.Expression.Group ast) {
+            return 1 + size(ast.getExpression());
+        }
+
+        @Override
+        public Integer visit(Ast.Expression.Binary ast) {
+            return 1 + size(ast.getLeft()) + size(ast.getRight());
+        }
+
+        @Override
+        public Integer visit(Ast.Expression.Access ast) {
+            return 1 + optional(ast.getOffset());
+        }
+
+        @Override
+        public Integer visit(Ast.Expression.Function ast) {
+            return 1 + size(ast.getArguments());
+        }
+
+        @Override
+        public Integer visit(Ast.Expression.PlcList ast) {
+            return 1 + size(ast.getValues());
+        }
+
+        private static int optional(Optional<Ast.Expression> ast) {
+            return ast.isPresent() ? Budget.size(ast.get()) : 0;
+        }
+
+    }
+
+}
@@ -0,0 +1,628 @@
+package plc.project;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiles an AST once into a tree of closures which can then be executed any
+ * number of times. The {@link Interpreter} works out what to do with a node
+ * every time it visits it, such as comparing a binary expression's operator
+ * against each operator in turn; the compiler makes those decisions once and
+ * builds a closure specialized for the node. Values are passed between
+ * closures unwrapped, and only wrapped in an {@link Environment.PlcObject}
+ * when they are stored in a {@link Scope} or passed to or from a function.
+ * Integers which fit in a {@code long} are kept as {@code Long}s until then,
+ * as described in {@link Operators}.
+ *
+ * Variables declared inside a function or block are resolved while compiling
+ * to a depth and slot in an array-backed {@link Frame}, so reading or writing
+ * them doesn't hash the name or walk a chain of scopes. Every block which
+ * declares variables gets a frame, as the interpreter gives it a scope, and
+ * other blocks share their parent's. Any other name, such as a global, is
+ * looked up in the scope the code is executed in.
+ *
+ * Compiled code behaves the same as the interpreter, sharing its operators
+ * through {@link Operators}. A compiled source defines its globals and
+ * functions in the scope it is executed in and returns the result of calling
+ * {@code main/0}, where a {@code RETURN} ends the function it is in and a
+ * function without one returns {@code NIL}.
+ */
+public final class Compiler {
+
+    // the result of a statement which completed without returning
+    private static final Object NORMAL = new Object();
+    private static final Object[] EMPTY = new Object[0];
+
+    private Compiler() {}
+
+    /**
+     * Compiles a source, declaration, statement or expression. Executing the
+     * code returns the value of an expression, the result of {@code main/0}
+     * for a source, and otherwise {@code NIL}. As in the interpreter, a
+     * {@code RETURN} outside of a function throws an {@link Interpreter.Return}.
+     */
+    public static Code compile(Ast ast) {
+        Object compiled = new Translator().visit(ast);
+        if (compiled instanceof Expression) {
+            Expression expression = (Expression) compiled;
+            return (scope, meter) -> wrap(expression.evaluate(new Frame(null, scope, meter, EMPTY)));
+        }
+        else if (compiled instanceof Statement) {
+            Statement statement = (Statement) compiled;
+            return (scope, meter) -> {
+                Object result = statement.execute(new Frame(null, scope, meter, EMPTY));
+                if (result != NORMAL) {
+                    throw new Interpreter.Return(wrap(result));
+                }
+                return Environment.NIL;
+            };
+        }
+        return (Code) compiled;
+    }
+
+    /**
+     * Compiled code, which can be executed any number of times and in any
+     * scope.
+     */
+    @FunctionalInterface
+    public interface Code {
+
+        /**
+         * Executes the code, charging the loops it runs and the functions it
+         * defines to a meter unless it is {@code null}.
+         */
+        Environment.PlcObject execute(Scope scope, Budget.Meter meter);
+
+        default Environment.PlcObject execute(Scope scope) {
+            return execute(scope, null);
+        }
+
+    }
+
+    @FunctionalInterface
+    private interface Expression {
+
+        Object evaluate(Frame frame);
+
+    }
+
+    @FunctionalInterface
+    private interface Statement {
+
+        /**
+         * Returns {@link #NORMAL}, or the value of a {@code RETURN} which ends
+         * the enclosing function.
+         */
+        Object execute(Frame frame);
+
+    }
+
+    /**
+     * The values of the variables declared in a function or block, the scope
+     * which holds everything else, and the meter being charged, if any.
+     */
+    private static final class Frame {
+
+        private final Frame parent;
+        private final Scope scope;
+        private final Budget.Meter meter;
+        private final Object[] slots;
+
+        private Frame(Frame parent, Scope scope, Budget.Meter meter, Object[] slots) {
+            this.parent = parent;
+            this.scope = scope;
+            this.meter = meter;
+            this.slots = slots;
+        }
+
+        private Frame(Frame parent, Object[] slots) {
+            this(parent, parent.scope, parent.meter, slots);
+        }
+
+        private Frame up(int depth) {
+            Frame frame = this;
+            for (int i = 0; i < depth; i++) {
+                frame = frame.parent;
+            }
+            return frame;
+        }
+
+    }
+
+    /**
+     * The variables declared so far in a function or block being compiled,
+     * and their slots in its frame.
+     */
+    private static final class Block {
+
+        private final Block parent;
+        private final Map<String, Integer> slots = new HashMap<>();
+        private int next;
+        private int size;
+
+        private Block(Block parent) {
+            this.parent = parent;
+        }
+
+        /**
+         * Returns the slot of a new variable, or -1 if the block has already
+         * declared one with the same name.
+         */
+        private int declare(String name) {
+            if (slots.containsKey(name)) {
+                return -1;
+            }
+            slots.put(name, next);
+            size = Math.max(size, next + 1);
+            return next++;
+        }
+
+        /**
+         * Forgets the variables declared so far, so that their slots can be
+         * used by code which never runs alongside it.
+         */
+        private void reset() {
+            slots.clear();
+            next = 0;
+        }
+
+    }
+
+    private static Object execute(Statement[] statements, Frame frame) {
+        for (Statement statement : statements) {
+            Object result = statement.execute(frame);
+            if (result != NORMAL) {
+                return result;
+            }
+        }
+        return NORMAL;
+    }
+
+    private static Environment.PlcObject wrap(Object value) {
+        return Environment.create(Operators.widen(value));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void set(Object list, Object index, Object element) {
+        BigInteger offset = (BigInteger) Operators.widen(index);
+        ((List<BigInteger>) list).set(offset.intValue(), (BigInteger) Operators.widen(element));
+    }
+
+    private static RuntimeException alreadyDefined(String name) {
+        return new RuntimeException("The variable " + name + " is already defined in this scope.");
+    }
+
+    private static final class Translator implements Ast.Visitor<Object> {
+
+        // the innermost function or block which declares variables, or null
+        // outside of any
+        private Block block;
+
+        @Override
+        public Code visit(Ast.Source ast) {
+            Statement[] globals = compileStatements(ast.getGlobals());
+            Statement[] functions = compileStatements(ast.getFunctions());
+            return (scope, meter) -> {
+                Frame frame = new Frame(null, scope, meter, EMPTY);
+                execute(globals, frame);
+                execute(functions, frame);
+                return scope.lookupFunction("main", 0).invoke(Collections.emptyList());
+            };
+        }
+
+        @Override
+        public Statement visit(Ast.Global ast) {
+            String name = ast.getName();
+            boolean mutable = ast.getMutable();
+            if (ast.getValue().isEmpty()) {
+                return frame -> {
+                    frame.scope.defineVariable(name, mutable, Environment.NIL);
+                    return NORMAL;
+                };
+            }
+            Expression value = compile(ast.getValue().get());
+            return frame -> {
+                frame.scope.defineVariable(name, mutable, wrap(value.evaluate(frame)));
+                return NORMAL;
+            };
+        }
+
+        @Override
+        public Statement visit(Ast.Function ast) {
+            String name = ast.getName();
+            int arity = ast.getParameters().size();
+            Block outer = block;
+            block = new Block(null);
+            String duplicate = null;
+            for (String parameter : ast.getParameters()) {
+                if (block.declare(parameter) < 0 && duplicate == null) {
+                    duplicate = parameter;
+                }
+            }
+            Statement[] statements = compileStatements(ast.getStatements());
+            int size = block.size;
+            int nodes = Budget.size(ast);
+            block = outer;
+            if (duplicate != null) {
+                // as with a declaration, this only fails once it's executed
+                String parameter = duplicate;
+                return frame -> {
+                    frame.scope.defineFunction(name, arity, arguments -> {
+                        throw alreadyDefined(parameter);
+                    });
+                    return NORMAL;
+                };
+            }
+            return frame -> {
+                Scope scope = frame.scope;
+                Budget.Meter meter = frame.meter;
+                scope.defineFunction(name, arity, arguments -> {
+                    if (meter != null) {
+                        meter.call(nodes);
+                    }
+                    Object[] slots = new Object[size];
+                    for (int i = 0; i < arity; i++) {
+                        slots[i] = arguments.get(i).getValue();
+                    }
+                    Object result = execute(statements, new Frame(null, scope, meter, slots));
+                    return result == NORMAL ? Environment.NIL : wrap(result);
+                });
+                return NORMAL;
+            };
+        }
+
+        @Override
+        public Statement visit(Ast.Statement.Expression ast) {
+            Expression expression = compile(ast.getExpression());
+            return frame -> {
+                expression.evaluate(frame);
+                return NORMAL;
+            };
+        }
+
+        @Override
+        public Statement visit(Ast.Statement.Declaration ast) {
+            String name = ast.getName();
+            Expression value = ast.getValue().isPresent() ? compile(ast.getValue().get()) : null;
+            if (block == null) {
+                return frame -> {
+                    Environment.PlcObject object = value == null ? Environment.NIL : wrap(value.evaluate(frame));
+                    frame.scope.defineVariable(name, true, object);
+                    return NORMAL;
+                };
+            }
+            // the variable is only visible after its value, so it's declared
+            // once that has been compiled
+            int slot = block.declare(name);
+            if (slot < 0) {
+                return frame -> {
+                    if (value != null) {
+                        value.evaluate(frame);
+                    }
+                    throw alreadyDefined(name);
+                };
+            }
+            if (value == null) {
+                return frame -> {
+                    frame.slots[slot] = Environment.NIL.getValue();
+                    return NORMAL;
+                };
+            }
+            return frame -> {
+                frame.slots[slot] = value.evaluate(frame);
+                return NORMAL;
+            };
+        }
+
+        @Override
+        public Statement visit(Ast.Statement.Assignment ast) {
+            if (!(ast.getReceiver() instanceof Ast.Expression.Access)) {
+                // as in the interpreter, this only fails once it's executed
+                Ast.Expression receiver = ast.getReceiver();
+                return frame -> {
+                    Operators.requireType(Ast.Expression.Access.class, receiver);
+                    return NORMAL;
+                };
+            }
+            Ast.Expression.Access receiver = (Ast.Expression.Access) ast.getReceiver();
+            String name = receiver.getName();
+            Expression value = compile(ast.getValue());
+            int[] address = resolve(name);
+            if (receiver.getOffset().isEmpty()) {
+                if (address == null) {
+                    return frame -> {
+                        Environment.Variable variable = frame.scope.lookupVariable(name);
+                        variable.setValue(wrap(value.evaluate(frame)));
+                        return NORMAL;
+                    };
+                }
+                int depth = address[0];
+                int slot = address[1];
+                return frame -> {
+                    Object result = value.evaluate(frame);
+                    frame.up(depth).slots[slot] = result;
+                    return NORMAL;
+                };
+            }
+            Expression offset = compile(receiver.getOffset().get());
+            if (address == null) {
+                return frame -> {
+                    Environment.Variable variable = frame.scope.lookupVariable(name);
+                    Object index = offset.evaluate(frame);
+                    Object element = value.evaluate(frame);
+                    Object list = variable.getValue().getValue();
+                    set(list, index, element);
+                    variable.setValue(wrap(list));
+                    return NORMAL;
+                };
+            }
+            int depth = address[0];
+            int slot = address[1];
+            return frame -> {
+                Object index = offset.evaluate(frame);
+                Object element = value.evaluate(frame);
+                set(frame.up(depth).slots[slot], index, element);
+                return NORMAL;
+            };
+        }
+
+        @Override
+        public Statement visit(Ast.Statement.If ast) {
+            Expression condition = compile(ast.getCondition());
+            Statement thenBlock = compileBlock(ast.getThenStatements());
+            Statement elseBlock = compileBlock(ast.getElseStatements());
+            return frame -> {
+                boolean value = Operators.requireType(Boolean.class, condition.evaluate(frame));
+                return value ? thenBlock.execute(frame) : elseBlock.execute(frame);
+            };
+        }
+
+        @Override
+        public Statement visit(Ast.Statement.Switch ast) {
+            Expression condition = compile(ast.getCondition());
+            // as in the interpreter, only cases with a value are matched, and
+            // they all share one scope
+            List<Ast.Statement.Case> cases = new ArrayList<>();
+            boolean declares = false;
+            for (Ast.Statement.Case c : ast.getCases()) {
+                if (c.getValue().isPresent()) {
+                    cases.add(c);
+                    declares |= declares(c.getStatements());
+                }
+            }
+            Block outer = block;
+            if (declares) {
+                block = new Block(outer);
+            }
+            Expression[] values = new Expression[cases.size()];
+            Statement[][] bodies = new Statement[cases.size()][];
+            for (int i = 0; i < values.length; i++) {
+                // the values are all evaluated before any case runs, and only
+                // one case runs, so every case starts from an empty frame
+                if (declares) {
+                    block.reset();
+                }
+                values[i] = compile(cases.get(i).getValue().get());
+                bodies[i] = compileStatements(cases.get(i).getStatements());
+            }
+            int size = declares ? block.size : -1;
+            block = outer;
+            return frame -> {
+                Object value = condition.evaluate(frame);
+                Frame child = size < 0 ? frame : new Frame(frame, new Object[size]);
+                for (int i = 0; i < values.length; i++) {
+                    if (Operators.equal(value, values[i].evaluate(child))) {
+                        return execute(bodies[i], child);
+                    }
+                }
+                return NORMAL;
+            };
+        }
+
+        @Override
+        public Statement visit(Ast.Statement.Case ast) {
+            Statement[] statements = compileStatements(ast.getStatements());
+            return frame -> execute(statements, frame);
+        }
+
+        @Override
+        public Statement visit(Ast.Statement.While ast) {
+            Expression condition = compile(ast.getCondition());
+            Statement body = compileBlock(ast.getStatements());
+            int nodes = Budget.size(ast);
+            return frame -> {
+                Budget.Meter meter = frame.meter;
+                while (Operators.requireType(Boolean.class, condition.evaluate(frame))) {
+                    if (meter != null) {
+                        meter.iterate(nodes);
+                    }
+                    Object result = body.execute(frame);
+                    if (result != NORMAL) {
+                        return result;
+                    }
+                }
+                return NORMAL;
+            };
+        }
+
+        @Override
+        public Statement visit(Ast.Statement.Return ast) {
+            Expression value = compile(ast.getValue());
+            return value::evaluate;
+        }
+
+        @Override
+        public Expression visit(Ast.Expression.Literal ast) {
+            Object value = ast.getLiteral() == null ? Environment.NIL.getValue() : Operators.narrow(ast.getLiteral());
+            return frame -> value;
+        }
+
+        @Override
+        public Expression visit(Ast.Expression.Group ast) {
+            return compile(ast.getExpression());
+        }
+
+        @Override
+        public Expression visit(Ast.Expression.Binary ast) {
+            Expression left = compile(ast.getLeft());
+            Expression right = compile(ast.getRight());
+            switch (ast.getOperator()) {
+                case "&&":
+                    return frame -> Operators.requireType(Boolean.class, left.evaluate(frame))
+                            && Operators.requireType(Boolean.class, right.evaluate(frame));
+                case "||":
+                    return frame -> Operators.requireType(Boolean.class, left.evaluate(frame))
+                            || Operators.requireType(Boolean.class, right.evaluate(frame));
+                case "<":
+                    return frame -> Operators.lessThan(left.evaluate(frame), right.evaluate(frame));
+                case ">":
+                    return frame -> Operators.greaterThan(left.evaluate(frame), right.evaluate(frame));
+                case "==":
+                    return frame -> Operators.equal(left.evaluate(frame), right.evaluate(frame));
+                case "!=":
+                    return frame -> !Operators.equal(left.evaluate(frame), right.evaluate(frame));
+                case "+":
+                    return frame -> Operators.add(left.evaluate(frame), right.evaluate(frame));
+                case "-":
+                    return frame -> Operators.subtract(left.evaluate(frame), right.evaluate(frame));
+                case "*":
+                    return frame -> Operators.multiply(left.evaluate(frame), right.evaluate(frame));
+                case "/":
+                    return frame -> Operators.divide(left.evaluate(frame), right.evaluate(frame));
+                case "^":
+                    return frame -> {
+                        Object base = left.evaluate(frame);
+                        Operators.requireInteger(base);
+                        return Operators.power(base, right.evaluate(frame));
+                    };
+                default:
+                    String operator = ast.getOperator();
+                    return frame -> {
+                        left.evaluate(frame);
+                        throw Operators.unknown(operator);
+                    };
+            }
+        }
+
+        @Override
+        public Expression visit(Ast.Expression.Access ast) {
+            String name = ast.getName();
+            int[] address = resolve(name);
+            Expression variable;
+            if (address == null) {
+                variable = frame -> frame.scope.lookupVariable(name).getValue().getValue();
+            }
+            else if (address[0] == 0) {
+                int slot = address[1];
+                variable = frame -> frame.slots[slot];
+            }
+            else {
+                int depth = address[0];
+                int slot = address[1];
+                variable = frame -> frame.up(depth).slots[slot];
+            }
+            if (ast.getOffset().isEmpty()) {
+                return variable;
+            }
+            Expression offset = compile(ast.getOffset().get());
+            return frame -> {
+                int index = Operators.requireInteger(offset.evaluate(frame)).intValue();
+                return ((List<?>) variable.evaluate(frame)).get(index);
+            };
+        }
+
+        @Override
+        public Expression visit(Ast.Expression.Function ast) {
+            String name = ast.getName();
+            Expression[] arguments = compileExpressions(ast.getArguments());
+            return frame -> {
+                Environment.PlcObject[] values = new Environment.PlcObject[arguments.length];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = wrap(arguments[i].evaluate(frame));
+                }
+                return frame.scope.lookupFunction(name, values.length).invoke(Arrays.asList(values)).getValue();
+            };
+        }
+
+        @Override
+        public Expression visit(Ast.Expression.PlcList ast) {
+            Expression[] values = compileExpressions(ast.getValues());
+            return frame -> {
+                List<Object> list = new ArrayList<>(values.length);
+                for (Expression value : values) {
+                    list.add(Operators.widen(value.evaluate(frame)));
+                }
+                return list;
+            };
+        }
+
+        /**
+         * Returns the depth and slot of a variable declared in a function or
+         * block, or {@code null} if it has to be looked up in the scope.
+         */
+        private int[] resolve(String name) {
+            int depth = 0;
+            for (Block current = block; current != null; current = current.parent) {
+                Integer slot = current.slots.get(name);
+                if (slot != null) {
+                    return new int[] {depth, slot};
+                }
+                depth++;
+            }
+            return null;
+        }
+
+        /**
+         * Compiles the statements of a block which the interpreter runs in a
+         * scope of its own, giving it a frame if it declares variables.
+         */
+        private Statement compileBlock(List<Ast.Statement> statements) {
+            if (!declares(statements)) {
+                Statement[] compiled = compileStatements(statements);
+                return frame -> execute(compiled, frame);
+            }
+            Block outer = block;
+            block = new Block(outer);
+            Statement[] compiled = compileStatements(statements);
+            int size = block.size;
+            block = outer;
+            return frame -> execute(compiled, new Frame(frame, new Object[size]));
+        }
+
+        private static boolean declares(List<Ast.Statement> statements) {
+            for (Ast.Statement statement : statements) {
+                if (statement instanceof Ast.Statement.Declaration) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private Expression compile(Ast.Expression ast) {
+            return (Expression) visit(ast);
+        }
+
+        private Expression[] compileExpressions(List<Ast.Expression> asts) {
+            Expression[] compiled = new Expression[asts.size()];
+            for (int i = 0; i < compiled.length; i++) {
+                compiled[i] = compile(asts.get(i));
+            }
+            return compiled;
+        }
+
+        private Statement[] compileStatements(List<? extends Ast> asts) {
+            Statement[] compiled = new Statement[asts.size()];
+            for (int i = 0; i < compiled.length; i++) {
+                compiled[i] = (Statement) visit(asts.get(i));
+            }
+            return compiled;
+        }
+
+    }
+
+}
@@ -1,5 +1,6 @@
 package plc.project;
 
+import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -8,10 +9,6 @@ import java.util.Map;
 
 public final class Environment {
 
-    public static PlcObject create(Object value) {
-        return new PlcObject(new Scope(null), value);
-    }
-
     public static final PlcObject NIL = new PlcObject(Type.NIL, new Scope(null), new Object() {
 
         @Override
@@ -21,6 +18,41 @@ public final class Environment {
 
     });
 
+    private static final Type UNKNOWN = new Type("Unknown", "Unknown", new Scope(null));
+
+    public static final PlcObject TRUE = new PlcObject(UNKNOWN, UNKNOWN.scope, Boolean.TRUE);
+    public static final PlcObject FALSE = new PlcObject(UNKNOWN, UNKNOWN.scope, Boolean.FALSE);
+
+    private static final int SMALLEST_CACHED = -128;
+    private static final PlcObject[] INTEGERS = new PlcObject[1024 - SMALLEST_CACHED + 1];
+
+    static {
+        for (int i = 0; i < INTEGERS.length; i++) {
+            INTEGERS[i] = new PlcObject(UNKNOWN, UNKNOWN.scope, BigInteger.valueOf(SMALLEST_CACHED + i));
+        }
+    }
+
+    /**
+     * Returns an object holding the value. Values are never modified, so
+     * booleans, {@code NIL} and integers from -128 to 1024 are shared rather
+     * than allocated each time.
+     */
+    public static PlcObject create(Object value) {
+        if (value instanceof Boolean) {
+            return (Boolean) value ? TRUE : FALSE;
+        }
+        else if (value == NIL.getValue()) {
+            return NIL;
+        }
+        else if (value instanceof BigInteger && ((BigInteger) value).bitLength() < 32) {
+            int index = ((BigInteger) value).intValue() - SMALLEST_CACHED;
+            if (index >= 0 && index < INTEGERS.length) {
+                return INTEGERS[index];
+            }
+        }
+        return new PlcObject(UNKNOWN, UNKNOWN.scope, value);
+    }
+
     private static final Map<String, Type> TYPES = new HashMap<>();
 
     public static Type getType(String name) {
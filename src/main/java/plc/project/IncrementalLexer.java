@@ -0,0 +1,136 @@
+package plc.project;
+
+import java.util.Iterator;
+
+/**
+ * Keeps the tokens of a source file up to date as it is edited. Rather than
+ * lexing the whole file again, {@link #edit(int, int, String)} re-lexes from
+ * the token touching the edit and stops as soon as it reaches a token which
+ * started at the same place before the edit, reusing every token after it.
+ *
+ * This works because a token only depends on the characters from its start
+ * onwards (and at most one character past its end), so once the lexer starts
+ * a token on an unchanged position past the edit it would produce exactly the
+ * old tokens again. Tokens are kept in a {@link TokenBuffer}, so reusing them
+ * only shifts their start indices by the change in length.
+ *
+ * Re-lexing interns every name it meets, including ones which are edited
+ * away again, so the {@link SymbolTable} only grows. Once it holds twice as
+ * many symbols as after the last full lex, plus {@link #SPARE_SYMBOLS}, the
+ * next edit lexes the whole source into a new table instead, which bounds it
+ * by the names the source actually uses.
+ */
+public final class IncrementalLexer {
+
+    static final int SPARE_SYMBOLS = 256;
+
+    private SymbolTable symbols;
+    // the table's size past which the next edit lexes in full
+    private int limit;
+    private String source;
+    private TokenBuffer tokens;
+
+    public IncrementalLexer(String source) {
+        this.source = source;
+        this.tokens = lex();
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * Returns the tokens of the current source. The buffer is updated in place
+     * by later edits. If the last edit left the source unlexable this lexes it
+     * in full, throwing the same exception.
+     */
+    public TokenBuffer getTokens() {
+        if (tokens == null) {
+            tokens = lex();
+        }
+        return tokens;
+    }
+
+    /**
+     * Returns the table the symbol ids of the tokens refer to, which is
+     * replaced by a new one whenever the source is lexed in full.
+     */
+    public SymbolTable getSymbols() {
+        return symbols;
+    }
+
+    /**
+     * Replaces {@code removed} characters at {@code offset} with the inserted
+     * text and returns the updated tokens.
+     *
+     * If the new source cannot be lexed the edit is still applied and the
+     * {@link ParseException} is thrown. The next edit then lexes the whole
+     * source, since there are no valid tokens to resynchronize with.
+     */
+    public TokenBuffer edit(int offset, int removed, String inserted) {
+        if (offset < 0 || removed < 0 || offset + removed > source.length()) {
+            throw new IndexOutOfBoundsException("Edit [" + offset + ", " + (offset + removed) + ") is outside of the source (length " + source.length() + ").");
+        }
+        TokenBuffer previous = tokens;
+        source = source.substring(0, offset) + inserted + source.substring(offset + removed);
+        tokens = null;
+        if (previous != null) {
+            if (symbols.size() > limit) {
+                previous.splice(0, previous.size(), lex(), 0, source);
+            }
+            else {
+                relex(previous, offset, removed, inserted.length());
+            }
+            tokens = previous;
+        }
+        return getTokens();
+    }
+
+    private TokenBuffer lex() {
+        symbols = new SymbolTable();
+        TokenBuffer lexed = new Lexer(source, symbols).lexCompact();
+        limit = 2 * symbols.size() + SPARE_SYMBOLS;
+        return lexed;
+    }
+
+    private void relex(TokenBuffer previous, int offset, int removed, int inserted) {
+        int delta = inserted - removed;
+        // the first token which could change is the first one reaching the
+        // edit, including one ending right before it since it may now extend
+        int first = 0;
+        int last = previous.size();
+        while (first < last) {
+            int middle = (first + last) >>> 1;
+            if (previous.getStart(middle) + previous.getLength(middle) < offset) {
+                first = middle + 1;
+            }
+            else {
+                last = middle;
+            }
+        }
+        int start = first < previous.size() ? Math.min(previous.getStart(first), offset) : offset;
+
+        // old tokens starting past the removed region are the candidates for
+        // resynchronizing, in the order the lexer will reach them
+        int next = first;
+        while (next < previous.size() && previous.getStart(next) < offset + removed) {
+            next++;
+        }
+        TokenBuffer replacement = new TokenBuffer(source);
+        Iterator<Token> lexer = new Lexer(source, symbols, start).tokens();
+        while (lexer.hasNext()) {
+            Token token = lexer.next();
+            int old = token.getIndex() - delta;
+            while (next < previous.size() && previous.getStart(next) < old) {
+                next++;
+            }
+            if (token.getIndex() >= offset + inserted && next < previous.size() && previous.getStart(next) == old) {
+                previous.splice(first, next, replacement, delta, source);
+                return;
+            }
+            replacement.add(token.getType(), token.getIndex(), token.getLength(), token.getSymbol());
+        }
+        previous.splice(first, previous.size(), replacement, delta, source);
+    }
+
+}
@@ -0,0 +1,180 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Keeps the AST of a source file up to date as it is edited. Tokens are kept
+ * by an {@link IncrementalLexer}, and for each top level declaration the
+ * parser remembers the tokens it was parsed from. When an edit falls inside a
+ * single declaration only that declaration is parsed again, and every other
+ * {@link Ast.Global} and {@link Ast.Function} in the new {@link Ast.Source}
+ * is the same object as before, so anything keyed on node identity stays
+ * valid.
+ *
+ * A declaration ends with a {@code ;} or {@code END}, so parsing it never
+ * looks past its own tokens except for the optional {@code ;} after it. If
+ * the edit reaches another declaration, or the new tokens don't parse as
+ * exactly one declaration of the same kind, the whole source is parsed again.
+ */
+public final class IncrementalParser {
+
+    private final IncrementalLexer lexer;
+    private Ast.Source ast;
+    // the tokens [firsts[i], ends[i]) of each declaration, globals first,
+    // including the semi-colon which may follow it
+    private int[] firsts = new int[16];
+    private int[] ends = new int[16];
+
+    public IncrementalParser(String source) {
+        this.lexer = new IncrementalLexer(source);
+        this.ast = parse(lexer.getTokens());
+    }
+
+    public String getSource() {
+        return lexer.getSource();
+    }
+
+    public TokenBuffer getTokens() {
+        return lexer.getTokens();
+    }
+
+    /**
+     * Returns the AST of the current source. If the last edit left the source
+     * unparsable this parses it in full, throwing the same exception.
+     */
+    public Ast.Source getAst() {
+        if (ast == null) {
+            ast = parse(lexer.getTokens());
+        }
+        return ast;
+    }
+
+    /**
+     * Replaces {@code removed} characters at {@code offset} with the inserted
+     * text and returns the updated AST.
+     *
+     * If the new source cannot be lexed or parsed the edit is still applied
+     * and the {@link ParseException} is thrown. The next edit then parses the
+     * whole source.
+     */
+    public Ast.Source edit(int offset, int removed, String inserted) {
+        Ast.Source previous = ast;
+        ast = null;
+        if (previous == null) {
+            lexer.edit(offset, removed, inserted);
+            return getAst();
+        }
+        // the old tokens are updated in place, so note what's needed first
+        TokenBuffer tokens = lexer.getTokens();
+        int size = tokens.size();
+        int declaration = find(previous, tokens, offset, removed);
+        int next = declaration >= 0 && ends[declaration] < size ? ends[declaration] : -1;
+        int nextStart = next >= 0 ? tokens.getStart(next) : 0;
+        int nextLength = next >= 0 ? tokens.getLength(next) : 0;
+
+        tokens = lexer.edit(offset, removed, inserted);
+        if (declaration >= 0) {
+            int shift = tokens.size() - size;
+            int delta = inserted.length() - removed;
+            // the token after the declaration must be the old one, moved
+            if (next < 0 || (tokens.getStart(next + shift) == nextStart + delta && tokens.getLength(next + shift) == nextLength)) {
+                ast = reparse(previous, tokens, declaration, shift);
+            }
+        }
+        return getAst();
+    }
+
+    /**
+     * Returns the declaration which the edit falls inside of, or -1 if there
+     * is none. Its first token must end before the edit, so the tokens before
+     * the declaration are unchanged, and the edit must end before the first
+     * token of the next declaration.
+     */
+    private int find(Ast.Source previous, TokenBuffer tokens, int offset, int removed) {
+        int count = previous.getGlobals().size() + previous.getFunctions().size();
+        int first = 0;
+        int last = count;
+        while (first < last) {
+            int middle = (first + last) >>> 1;
+            if (tokens.getStart(firsts[middle]) + tokens.getLength(firsts[middle]) < offset) {
+                first = middle + 1;
+            }
+            else {
+                last = middle;
+            }
+        }
+        int declaration = first - 1;
+        if (declaration < 0) {
+            return -1;
+        }
+        if (ends[declaration] < tokens.size() && offset + removed > tokens.getStart(ends[declaration])) {
+            return -1;
+        }
+        return declaration;
+    }
+
+    /**
+     * Parses the given declaration again from the edited tokens, returning a
+     * new source which reuses all of the other declarations, or {@code null}
+     * if it has to be parsed in full.
+     */
+    private Ast.Source reparse(Ast.Source previous, TokenBuffer tokens, int declaration, int shift) {
+        int globals = previous.getGlobals().size();
+        int count = globals + previous.getFunctions().size();
+        int first = firsts[declaration];
+        int end = ends[declaration] + shift;
+        if (end <= first) {
+            return null;
+        }
+        Parser parser = new Parser(tokens.subList(first, end));
+        Ast node;
+        try {
+            node = declaration < globals ? parser.parseGlobal() : parser.parseFunction();
+        } catch (ParseException e) {
+            return null;
+        }
+        // as in parseSource, a semi-colon may follow the declaration, and if
+        // it's past the old end then the declaration has grown
+        int position = first + parser.position();
+        if (position < tokens.size() && tokens.get(position).hasLiteral(";")) {
+            position++;
+        }
+        if (position != end) {
+            return null;
+        }
+
+        List<Ast.Global> listGlobals = new ArrayList<>(previous.getGlobals());
+        List<Ast.Function> listFunctions = new ArrayList<>(previous.getFunctions());
+        if (declaration < globals) {
+            listGlobals.set(declaration, (Ast.Global) node);
+        }
+        else {
+            listFunctions.set(declaration - globals, (Ast.Function) node);
+        }
+        ends[declaration] = end;
+        for (int i = declaration + 1; i < count; i++) {
+            firsts[i] += shift;
+            ends[i] += shift;
+        }
+        return new Ast.Source(listGlobals, listFunctions);
+    }
+
+    /**
+     * Parses the whole source, recording the tokens of each declaration.
+     */
+    private Ast.Source parse(TokenBuffer tokens) {
+        return new Parser(tokens).parseSource(this::record);
+    }
+
+    private void record(int declaration, int first, int end) {
+        if (declaration == firsts.length) {
+            firsts = Arrays.copyOf(firsts, declaration * 2);
+            ends = Arrays.copyOf(ends, declaration * 2);
+        }
+        firsts[declaration] = first;
+        ends[declaration] = end;
+    }
+
+}
@@ -2,18 +2,44 @@ package plc.project;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
-import java.math.RoundingMode;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.lang.Comparable;
 
 public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
 
     private Scope scope = new Scope(null);
+    // literals are boxed once per node, as their values never change
+    private final Map<Ast.Expression.Literal, Environment.PlcObject> literals = new IdentityHashMap<>();
+    // the budget being charged, or null if there isn't one, and the sizes of
+    // the loops and functions it has been charged for
+    private final Budget.Meter meter;
+    private final Map<Ast, Integer> sizes = new IdentityHashMap<>();
 
     public Interpreter(Scope parent) {
+        this(parent, null);
+    }
+
+    /**
+     * Creates an interpreter which charges everything it evaluates to a
+     * meter, aborting with a {@link Budget.Aborted} once its budget runs out.
+     */
+    public Interpreter(Scope parent, Budget.Meter meter) {
         scope = new Scope(parent);
+        this.meter = meter;
+        defineBuiltins(scope);
+    }
+
+    /**
+     * Defines the builtin functions in a scope. They don't keep any state, so
+     * a scope holding them can be shared by any number of executions.
+     */
+    static void defineBuiltins(Scope scope) {
         scope.defineFunction("print", 1, args -> {
             System.out.println(args.get(0).getValue());
             return Environment.NIL;
@@ -65,7 +91,9 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
 
     @Override
     public Environment.PlcObject visit(Ast.Source ast) {
-        throw new UnsupportedOperationException(); //TODO
+        ast.getGlobals().forEach(this::visit);
+        ast.getFunctions().forEach(this::visit);
+        return scope.lookupFunction("main", 0).invoke(Collections.emptyList());
     }
 
     @Override
@@ -85,55 +113,9 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
 
     @Override
     public Environment.PlcObject visit(Ast.Function ast) {
-        String name = ast.getName();
-        List<Ast.Statement> listStatements = ast.getStatements();
-        List<String> listString = ast.getParameters();
-        List<Environment.PlcObject> listPlcObj = new ArrayList<>();
-        Scope originalScope = scope;
-
-        scope.defineFunction(name, listString.size(), args -> {
-            scope = new Scope(scope.getParent());
-            for (int i = 0; i < listString.size(); i++) {
-                scope.defineVariable(listString.get(i), true, Environment.create(args.get(i).getValue()));
-            }
-
-            for (int i = 0; i < listStatements.size(); i++) {
-                if (listStatements.get(i).getClass().equals(Ast.Statement.Return.class)) {
-                    try {
-                        visit(listStatements.get(i));
-                    } catch (RuntimeException t) {
-                        String x2 = t.getLocalizedMessage();
-                        int y2 = t.toString().length();
-                        for (int j = 0; j < y2; j++) {
-                            char x = t.toString().charAt(j);
-                            String y = t.getMessage();
-                        }
-                        String y = t.getMessage();
-                        String x= t.toString();
-                        if (t.getClass().equals(Return.class)) {
-                            String x4= t.toString();
-                        }
-
-                        System.out.println("3");
-                        //return t.fillInStackTrace();
-                        //return Return.value;
-                    }
-                }
-            }
-            return Environment.NIL;
-        });
-
-
-        listPlcObj.add(new Environment.PlcObject(scope, BigInteger.TEN));
-        try {
-            scope = new Scope(originalScope);
-            Environment.Function function = scope.lookupFunction(name, listString.size());
-            Environment.Function function2 = scope.lookupFunction(name, listString.size());
-            function.invoke(listPlcObj);
-        } finally {
-            scope = originalScope.getParent();
-        }
-
+        // the function sees the scope it's defined in, not its caller's
+        Scope parent = scope;
+        scope.defineFunction(ast.getName(), ast.getParameters().size(), args -> invoke(ast, parent, args));
         return Environment.NIL;
     }
 
@@ -162,7 +144,7 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
     @Override
     public Environment.PlcObject visit(Ast.Statement.Assignment ast) {
         Ast.Expression expression = ast.getReceiver();
-        requireType(Ast.Expression.Access.class, new Environment.PlcObject(scope, expression));
+        Operators.requireType(Ast.Expression.Access.class, expression);
         String name = ((Ast.Expression.Access)expression).getName();
         Optional<Ast.Expression> optional = ((Ast.Expression.Access)expression).getOffset();
         Environment.Variable variable = scope.lookupVariable(name);
@@ -182,8 +164,7 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
         }
         else {
             Ast.Expression value = ast.getValue();
-            Environment.PlcObject obj = visit(value);
-            variable.setValue(Environment.create(obj.getValue()));
+            variable.setValue(visit(value));
             return Environment.NIL;
         }
     }
@@ -192,16 +173,11 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
     public Environment.PlcObject visit(Ast.Statement.If ast) {
         Environment.PlcObject plcObj = visit(ast.getCondition());
         requireType(Boolean.class, plcObj);
-        try {
-            scope = new Scope(scope);
-            if (plcObj.getValue().equals(Boolean.TRUE)) {
-                ast.getThenStatements().forEach(this::visit);
-            }
-            else {
-                ast.getElseStatements().forEach(this::visit);
-            }
-        } finally {
-            scope = scope.getParent();
+        if (plcObj.getValue().equals(Boolean.TRUE)) {
+            visitBlock(ast.getThenStatements());
+        }
+        else {
+            visitBlock(ast.getElseStatements());
         }
         return Environment.NIL;
     }
@@ -209,10 +185,15 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
     @Override
     public Environment.PlcObject visit(Ast.Statement.Switch ast) {
         Environment.PlcObject plcObj = visit(ast.getCondition());
+        List<Ast.Statement.Case> list = ast.getCases();
+        boolean declares = false;
+        for (Ast.Statement.Case c : list) {
+            declares |= declares(c.getStatements());
+        }
         try {
-            scope = new Scope(scope);
-            List<Ast.Statement.Case> list = ast.getCases();
-            Object size = list.size();
+            if (declares) {
+                scope = new Scope(scope);
+            }
             for (int i = 0; i < list.size(); i++) {
                 Optional<Ast.Expression> optional = list.get(i).getValue();
                 if (optional.isPresent()) {
@@ -225,7 +206,9 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
                 }
             }
         } finally {
-            scope = scope.getParent();
+            if (declares) {
+                scope = scope.getParent();
+            }
         }
         return Environment.NIL;
     }
@@ -238,13 +221,17 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
 
     @Override
     public Environment.PlcObject visit(Ast.Statement.While ast) {
-
+        boolean declares = declares(ast.getStatements());
+        int size = meter == null ? 0 : size(ast);
         while (requireType(Boolean.class, visit(ast.getCondition()))) {
-            try {
-                scope = new Scope(scope);
+            if (meter != null) {
+                meter.iterate(size);
+            }
+            if (declares) {
+                visitScoped(ast.getStatements());
+            }
+            else {
                 ast.getStatements().forEach(this::visit);
-            } finally {
-                scope = scope.getParent();
             }
         }
         return Environment.NIL;
@@ -259,11 +246,8 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
 
     @Override
     public Environment.PlcObject visit(Ast.Expression.Literal ast) {
-        String x = ast.toString();
-        if (x.contains("literal=null")) {
-            return new Environment.PlcObject(scope, Environment.NIL.getValue());
-        }
-        return new Environment.PlcObject(scope, ast.getLiteral());
+        return literals.computeIfAbsent(ast, literal ->
+                literal.getLiteral() == null ? Environment.NIL : Environment.create(literal.getLiteral()));
     }
 
     @Override
@@ -273,153 +257,38 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
         return plcObj;
     }
 
-    // BINARY = 90% good
     @Override
     public Environment.PlcObject visit(Ast.Expression.Binary ast) {
         String operator = ast.getOperator();
-        Ast.Expression leftExpression = ast.getLeft();
-        Environment.PlcObject lhs = visit(leftExpression);
-        if ((operator.equals("&&")) || (operator.equals("||"))) {
-            requireType(Boolean.class, lhs);
-            if (operator.equals("||")) {
-                if ((Boolean)lhs.getValue() == true) {
-                    return new Environment.PlcObject(scope, true);
-                }
-                Ast.Expression rightExpression = ast.getRight();
-                Environment.PlcObject rhs = visit(rightExpression);
-                requireType(Boolean.class, rhs);
-                if ((Boolean)rhs.getValue() == true) {
-                    return new Environment.PlcObject(scope, true);
-                }
-                return new Environment.PlcObject(scope, false);
-            }
-            // else: operator is AND
-            if ((Boolean)lhs.getValue() != true)  {
-                return new Environment.PlcObject(scope, false);
-            }
-            Ast.Expression rightExpression = ast.getRight();
-            Environment.PlcObject rhs = visit(rightExpression);
-            requireType(Boolean.class, rhs);
-            if ((Boolean)rhs.getValue() != true)  {
-                return new Environment.PlcObject(scope, false);
-            }
-            return new Environment.PlcObject(scope, true);
-        }
-        else if ((operator.equals("<")) || (operator.equals(">"))) {
-            Ast.Expression rightExpression = ast.getRight();
-            Environment.PlcObject rhs = visit(rightExpression);
-            if (!lhs.getValue().getClass().equals(rhs.getValue().getClass())) {
-                throw new RuntimeException("Both expressions must be of the same class type");
-            }
-            Object returnVal = requireType(Comparable.class, lhs).compareTo(requireType(Comparable.class, rhs));
-            if ((returnVal.equals(-1) && operator.equals("<")) || (returnVal.equals(1) && operator.equals(">"))) {
-                return new Environment.PlcObject(scope, Boolean.TRUE);
-            }
-            else {
-                return new Environment.PlcObject(scope, Boolean.FALSE);
-            }
-        }
-        else if ((operator.equals("==")) != (operator.equals("!="))) {
-            Ast.Expression rightExpression = ast.getRight();
-            Environment.PlcObject rhs = visit(rightExpression);
-            if (operator.equals("==")) {
-                if (lhs.getValue().equals(rhs.getValue())) {
-                    return new Environment.PlcObject(scope, true);
-                }
-                return new Environment.PlcObject(scope, false);
-            }
-            // looking for not equal
-            if (lhs.getValue().equals(rhs.getValue())) {
-                return new Environment.PlcObject(scope, false);
-            }
-            return new Environment.PlcObject(scope, true);
-        }
-        else if (operator.equals("+")) {
-            Object x = lhs.getValue();
-            String tempStr = x.toString();
-            Ast.Expression rightExpression = ast.getRight();
-            Environment.PlcObject rhs = visit(rightExpression);
-            if (lhs.getValue().getClass().equals(String.class) || (rhs.getValue().getClass().equals(String.class))) {
-                String temp1 = lhs.getValue().toString();
-                String temp2 = rhs.getValue().toString();
-                return new Environment.PlcObject(scope, temp1.concat(temp2));
-            }
-            else {
-                if (!lhs.getValue().getClass().equals(rhs.getValue().getClass())) {
-                    throw new RuntimeException("Both expressions must be of the same class type");
-                }
-                if (lhs.getValue().getClass().equals(BigInteger.class)) {
-                    BigInteger temp1 = (BigInteger) lhs.getValue();
-                    BigInteger temp2 = (BigInteger) rhs.getValue();;
-                    return new Environment.PlcObject(scope, temp1.add(temp2));
+        Environment.PlcObject lhs = visit(ast.getLeft());
+        switch (operator) {
+            case "&&":
+                if (!requireType(Boolean.class, lhs)) {
+                    return Environment.FALSE;
                 }
-                else if (lhs.getValue().getClass().equals(BigDecimal.class)) {
-                    BigDecimal temp1 = (BigDecimal) lhs.getValue();
-                    BigDecimal temp2 = (BigDecimal) rhs.getValue();;
-                    return new Environment.PlcObject(scope, temp1.add(temp2));
+                return Environment.create(requireType(Boolean.class, visit(ast.getRight())));
+            case "||":
+                if (requireType(Boolean.class, lhs)) {
+                    return Environment.TRUE;
                 }
-            }
+                return Environment.create(requireType(Boolean.class, visit(ast.getRight())));
+            case "^":
+                // the base is checked before the exponent is evaluated
+                requireType(BigInteger.class, lhs);
+                return Environment.create(Operators.power(lhs.getValue(), visit(ast.getRight()).getValue()));
+            case "<":
+            case ">":
+            case "==":
+            case "!=":
+            case "+":
+            case "-":
+            case "*":
+            case "/":
+                Environment.PlcObject rhs = visit(ast.getRight());
+                return Environment.create(Operators.apply(operator, lhs.getValue(), rhs.getValue()));
+            default:
+                throw Operators.unknown(operator);
         }
-        else if ((operator.equals("-")) || (operator.equals("*"))) {
-            Ast.Expression rightExpression = ast.getRight();
-            Environment.PlcObject rhs = visit(rightExpression);
-            if (!lhs.getValue().getClass().equals(rhs.getValue().getClass())) {
-                throw new RuntimeException("Both expressions must be of the same class type");
-            }
-            if (lhs.getValue().getClass().equals(BigInteger.class)) {
-                BigInteger temp1 = (BigInteger) lhs.getValue();
-                BigInteger temp2 = (BigInteger) rhs.getValue();
-                if (operator.equals("-")) {
-                    return new Environment.PlcObject(scope, temp1.subtract(temp2));
-                }
-                return new Environment.PlcObject(scope, temp1.multiply(temp2));
-            }
-            else if (lhs.getValue().getClass().equals(BigDecimal.class)) {
-                BigDecimal temp1 = (BigDecimal) lhs.getValue();
-                BigDecimal temp2 = (BigDecimal) rhs.getValue();
-                if (operator.equals("-")) {
-                    return new Environment.PlcObject(scope, temp1.subtract(temp2));
-                }
-                return new Environment.PlcObject(scope, temp1.multiply(temp2));
-            }
-        }
-        else if (operator.equals("/")) {
-            Ast.Expression rightExpression = ast.getRight();
-            Environment.PlcObject rhs = visit(rightExpression);
-            if (!lhs.getValue().getClass().equals(rhs.getValue().getClass())) {
-                throw new RuntimeException("Both expressions must be of the same class type");
-            }
-            if (lhs.getValue().getClass().equals(BigInteger.class)) {
-                BigInteger temp1 = (BigInteger) lhs.getValue();
-                BigInteger temp2 = (BigInteger) rhs.getValue();;
-                if (temp2.equals(BigInteger.ZERO)) {
-                    throw new RuntimeException("Cannot divide by zero");
-                }
-                return new Environment.PlcObject(this.scope, temp1.divide(temp2));
-            }
-            else if (lhs.getValue().getClass().equals(BigDecimal.class)) {
-                BigDecimal temp1 = (BigDecimal) lhs.getValue();
-                BigDecimal temp2 = (BigDecimal) rhs.getValue();
-                if (temp2.equals(new BigDecimal("0.0"))) {
-                    throw new RuntimeException("Cannot divide by zero");
-                }
-                return new Environment.PlcObject(this.scope, temp1.divide(temp2, RoundingMode.HALF_EVEN));
-            }
-        }
-        else if (operator.equals("^")) {
-            requireType(BigInteger.class, lhs);
-            Ast.Expression rightExpression = ast.getRight();
-            Environment.PlcObject rhs = visit(rightExpression);
-            requireType(BigInteger.class, rhs);
-            BigInteger temp1 = (BigInteger) lhs.getValue();
-            BigInteger temp2 = (BigInteger) rhs.getValue();
-            int exp = temp2.intValue();
-            if (exp < 1) {
-                return new Environment.PlcObject(scope, BigInteger.ZERO);
-            }
-            return new Environment.PlcObject(scope, temp1.pow(exp));
-        }
-        throw new UnsupportedOperationException(); //TODO
     }
 
     @Override
@@ -434,24 +303,21 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
             List<BigInteger> list = (List<BigInteger>) temp;
             BigInteger tempVal = (BigInteger) obj.getValue();
             int index = tempVal.intValue();
-            return new Environment.PlcObject(scope, list.get(index));
+            return Environment.create(list.get(index));
         }
-        Object temp = scope.lookupVariable(ast.getName()).getValue().getValue();
-        return new Environment.PlcObject(scope, temp);
+        return scope.lookupVariable(ast.getName()).getValue();
     }
 
     @Override
     public Environment.PlcObject visit(Ast.Expression.Function ast) {
         String name = ast.getName();
         List<Ast.Expression> arguments = ast.getArguments();
-        List<Environment.PlcObject> plcArgumentList = new ArrayList<>();
-        for (int i = 0; i < arguments.size(); i++) {
-            Environment.PlcObject plcObj = visit(arguments.get(i));
-            plcArgumentList.add(plcObj);
+        Environment.PlcObject[] values = new Environment.PlcObject[arguments.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = visit(arguments.get(i));
         }
-        int arity = arguments.size();
-        Environment.Function function = scope.lookupFunction(name, arity);
-        return function.invoke(plcArgumentList);
+        Environment.Function function = scope.lookupFunction(name, values.length);
+        return function.invoke(Arrays.asList(values));
     }
 
     @Override
@@ -462,29 +328,94 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
             Environment.PlcObject temp = visit(ast.getValues().get(i));
             list2.add(temp.getValue());
         }
-        Environment.PlcObject plcObj = new Environment.PlcObject(scope, list2);
-        return plcObj;
+        return Environment.create(list2);
+    }
+
+    /**
+     * Calls a function with a new activation scope for its parameters and
+     * variables. The caller's scope is restored however the call ends, so a
+     * function can be called from anywhere, including from outside of the
+     * interpreter once it has been defined.
+     */
+    private Environment.PlcObject invoke(Ast.Function function, Scope parent, List<Environment.PlcObject> arguments) {
+        if (meter != null) {
+            meter.call(size(function));
+        }
+        Scope caller = scope;
+        scope = new Scope(parent);
+        try {
+            List<String> parameters = function.getParameters();
+            for (int i = 0; i < parameters.size(); i++) {
+                scope.defineVariable(parameters.get(i), true, arguments.get(i));
+            }
+            for (Ast.Statement statement : function.getStatements()) {
+                visit(statement);
+            }
+            return Environment.NIL;
+        } catch (Return r) {
+            return r.value;
+        } finally {
+            scope = caller;
+        }
+    }
+
+    private int size(Ast ast) {
+        return sizes.computeIfAbsent(ast, Budget::size);
+    }
+
+    /**
+     * Visits the statements of a block in a new scope, unless they don't
+     * declare anything and so can't tell it apart from the enclosing one.
+     */
+    private void visitBlock(List<Ast.Statement> statements) {
+        if (declares(statements)) {
+            visitScoped(statements);
+        }
+        else {
+            statements.forEach(this::visit);
+        }
+    }
+
+    private void visitScoped(List<Ast.Statement> statements) {
+        try {
+            scope = new Scope(scope);
+            statements.forEach(this::visit);
+        } finally {
+            scope = scope.getParent();
+        }
+    }
+
+    /**
+     * Returns true if the statements declare a variable directly, rather than
+     * in a nested block which has a scope of its own.
+     */
+    private static boolean declares(List<Ast.Statement> statements) {
+        for (Ast.Statement statement : statements) {
+            if (statement instanceof Ast.Statement.Declaration) {
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
      * Helper function to ensure an object is of the appropriate type.
      */
     private static <T> T requireType(Class<T> type, Environment.PlcObject object) {
-        if (type.isInstance(object.getValue())) {
-            return type.cast(object.getValue());
-        } else {
-            throw new RuntimeException("Expected type " + type.getName() + ", received " + object.getValue().getClass().getName() + ".");
-        }
+        return Operators.requireType(type, object.getValue());
     }
 
     /**
-     * Exception class for returning values.
+     * Exception class for returning values. It is thrown on every return, so
+     * it doesn't record a stack trace or suppressed exceptions, which would
+     * cost far more than the return itself.
      */
     public static class Return extends RuntimeException {
 
         public final Environment.PlcObject value;
 
         public Return(Environment.PlcObject value) {
+            super(null, null, false, false);
             this.value = value;
         }
 
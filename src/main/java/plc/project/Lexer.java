@@ -1,7 +1,26 @@
 package plc.project;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.regex.Pattern;
 
 /**
  * The lexer works through three main functions:
@@ -17,10 +36,88 @@ import java.util.List;
  * The {@link #peek(String...)} and {@link #match(String...)} functions are * helpers you need to use, they will make the implementation a lot easier. */
 public final class Lexer {
 
+    // character classes for the patterns used by the lex methods, built once
+    private static final CharClass SPACE = CharClass.of("[ ]");
+    private static final CharClass IDENTIFIER_START = CharClass.of("[A-Za-z]|[@]");
+    private static final CharClass IDENTIFIER_PART = CharClass.of("[A-Za-z0-9_-]");
+    private static final CharClass NUMBER_START = CharClass.of("[0]|[1-9]");
+    private static final CharClass NUMBER_PART = CharClass.of("[0-9]|[.]|[-]");
+    private static final CharClass DIGIT = CharClass.of("[0-9]");
+    private static final CharClass ZERO = CharClass.of("[0]");
+    private static final CharClass MINUS = CharClass.of("[-]");
+    private static final CharClass DOT = CharClass.of("[.]");
+    private static final CharClass SINGLE_QUOTE = CharClass.of("[']");
+    private static final CharClass DOUBLE_QUOTE = CharClass.of("\"");
+    private static final CharClass NOT_DOUBLE_QUOTE = CharClass.of("[^\"]");
+    private static final CharClass LITERAL_CHARACTER = CharClass.of("[^'\\n\\r\\\\]");
+    private static final CharClass STRING_CHARACTER = CharClass.of("[^\"\\n\\r\\\\]");
+    private static final CharClass BACKSLASH = CharClass.of("[\\\\]");
+    private static final CharClass BANG = CharClass.of("[!]");
+    private static final CharClass EQUALS = CharClass.of("[=]");
+    private static final CharClass AMPERSAND = CharClass.of("[&]");
+    private static final CharClass PIPE = CharClass.of("[|]");
+    private static final CharClass NON_SPACE = CharClass.of("[^ ]");
+
+    // smallest chunk worth lexing on another thread
+    static final int CHUNK = 1 << 16;
+
     private final CharStream chars;
+    private final SymbolTable symbols;
+
+    public Lexer(CharSequence input) {
+        this(input, new SymbolTable());
+    }
+
+    /**
+     * Creates a lexer which interns identifiers into the given symbol table,
+     * allowing one table to be shared by the lexers of several inputs.
+     */
+    public Lexer(CharSequence input, SymbolTable symbols) {
+        this(input, symbols, 0);
+    }
+
+    /**
+     * Creates a lexer which starts at the given index of the input, which must
+     * be the start of a token or whitespace. Tokens keep their indices in the
+     * whole input. Used by {@link IncrementalLexer} to re-lex part of a file.
+     */
+    Lexer(CharSequence input, SymbolTable symbols, int start) {
+        this(input, symbols, start, input.length());
+    }
+
+    /**
+     * Creates a lexer for the tokens of the input starting from {@code start}
+     * up to {@code end}, which must both be token boundaries. A token may
+     * still look past the end, so that an invalid token fails in the same way
+     * as it would without one. Used by {@link #lexParallel(ForkJoinPool)} to
+     * lex each chunk.
+     */
+    Lexer(CharSequence input, SymbolTable symbols, int start, int end) {
+        this.chars = new CharStream(input);
+        this.chars.index = start;
+        this.chars.limit = end;
+        this.symbols = symbols;
+    }
 
-    public Lexer(String input) {
-        chars = new CharStream(input);
+    /**
+     * Creates a lexer reading from the given reader. Characters are buffered
+     * in a sliding window that only keeps the token being matched, so when
+     * tokens are pulled through {@link #tokens()} memory stays bounded by the
+     * longest token rather than the size of the input.
+     */
+    public Lexer(Reader reader) {
+        this.chars = new CharStream(reader);
+        this.symbols = new SymbolTable();
+    }
+
+    /**
+     * Creates a lexer over a memory-mapped file, decoding it with the given
+     * charset as it is read. The file is mapped in regions, so files larger
+     * than the heap can be lexed through {@link #tokens()}. The channel is
+     * owned by the caller and must stay open while lexing.
+     */
+    public static Lexer map(FileChannel channel, Charset charset) throws IOException {
+        return new Lexer(new MappedReader(channel, charset));
     }
 
     /**
@@ -28,21 +125,186 @@ public final class Lexer {
      * whitespace where appropriate.
      */
     public List<Token> lex() {
-        List list = new ArrayList<>();
-        while (chars.has(0)) {
-            // check to make sure it is not a space
-            if (!peek("[ ]")) {
-                list.add(lexToken());
+        List<Token> list = new ArrayList<>();
+        while (hasToken()) {
+            list.add(lexToken());
+        }
+        return list;
+    }
+
+    /**
+     * Lexes the input in the same way as {@link #lex()}, but stores the tokens
+     * as offsets into the input instead of copying each literal into its own
+     * string. This requires the input to be held in memory, so it is not
+     * supported for lexers reading from a {@link Reader}.
+     */
+    public TokenBuffer lexCompact() {
+        TokenBuffer buffer = new TokenBuffer(chars.getInput());
+        while (hasToken()) {
+            chars.emit(scanToken(), symbols, buffer);
+        }
+        return buffer;
+    }
+
+    /**
+     * Lexes the input in the same way as {@link #lex()}, but rather than
+     * stopping at the first invalid token it records the error and keeps
+     * going, so that one pass reports every lexical error.
+     *
+     * An invalid token is replaced by an {@link Token.Type#ERROR} token which
+     * runs from its start to the next space or newline at or after the point
+     * where lexing failed, and lexing resumes from there. An invalid string
+     * instead runs to its closing quote, or the end of the line if it has none.
+     */
+    public Result lexRecovering() {
+        List<Token> tokens = new ArrayList<>();
+        List<ParseException> errors = new ArrayList<>();
+        while (hasToken()) {
+            int start = chars.index;
+            boolean string = peek(DOUBLE_QUOTE);
+            try {
+                tokens.add(lexToken());
+            } catch (ParseException e) {
+                errors.add(e);
+                if (chars.index == start) {
+                    chars.advance();
+                }
+                // a string may contain spaces, so skip to its closing quote
+                while (chars.has(0) && chars.get(0) != '\n' && (string ? chars.get(0) != '"' : chars.get(0) != ' ')) {
+                    chars.advance();
+                }
+                if (string) {
+                    match(DOUBLE_QUOTE);
+                }
+                tokens.add(chars.emit(Token.Type.ERROR));
             }
-            // if it is a space
-            else {
-                chars.advance();
-                chars.skip();
+        }
+        return new Result(tokens, errors);
+    }
+
+    /**
+     * Lexes the input in the same way as {@link #lex()}, using the common
+     * pool. See {@link #lexParallel(ForkJoinPool)}.
+     */
+    public List<Token> lexParallel() {
+        return lexParallel(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Lexes the input in the same way as {@link #lex()}, splitting it into
+     * chunks which are lexed in parallel on the given pool. The result,
+     * including symbol ids and any {@link ParseException}, is identical to
+     * {@link #lex()}.
+     *
+     * Chunks end just after a newline. A newline can't be part of a string,
+     * character or any other token, so in any input that lexes successfully it
+     * is a token of its own and the lexer is at a token boundary after it. If
+     * a chunk fails, the chunks before it lexed successfully and so it fails
+     * exactly as the sequential lexer would. Inputs without enough newlines
+     * are lexed sequentially.
+     */
+    public List<Token> lexParallel(ForkJoinPool pool) {
+        CharSequence input = chars.getInput();
+        List<Chunk> chunks = split(input, pool.getParallelism());
+        if (chunks.size() == 1) {
+            return lex();
+        }
+        for (Chunk chunk : chunks) {
+            pool.execute(chunk);
+        }
+        int size = 0;
+        for (Chunk chunk : chunks) {
+            chunk.join();
+            if (chunk.error != null) {
+                throw chunk.error;
             }
+            size += chunk.tokens.size();
+        }
+        // intern each chunk's identifiers in order of first use, as the
+        // sequential lexer would, then rewrite the chunks' tokens in parallel
+        List<ForkJoinTask<?>> remaps = new ArrayList<>();
+        for (Chunk chunk : chunks.subList(1, chunks.size())) {
+            int[] ids = new int[chunk.symbols.size()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = symbols.intern(chunk.symbols.getName(i));
+            }
+            remaps.add(pool.submit(() -> chunk.remap(ids, symbols)));
+        }
+        for (ForkJoinTask<?> remap : remaps) {
+            remap.join();
+        }
+        List<Token> list = new ArrayList<>(size);
+        for (Chunk chunk : chunks) {
+            list.addAll(chunk.tokens);
         }
+        chars.index = chars.limit;
+        chars.skip();
         return list;
     }
 
+    /**
+     * Splits the rest of the input into chunks for about four per thread. The
+     * first chunk uses this lexer's symbol table, since nothing else touches
+     * it until every chunk is lexed.
+     */
+    private List<Chunk> split(CharSequence input, int parallelism) {
+        int size = Math.max(CHUNK, (chars.limit - chars.index) / (4 * parallelism));
+        List<Chunk> chunks = new ArrayList<>();
+        int start = chars.index;
+        while (start < chars.limit) {
+            int end = Math.min(start + size, chars.limit);
+            while (end < chars.limit && input.charAt(end - 1) != '\n') {
+                end++;
+            }
+            chunks.add(new Chunk(input, chunks.isEmpty() ? symbols : new SymbolTable(), start, end));
+            start = end;
+        }
+        return chunks;
+    }
+
+    /**
+     * Returns an iterator which lexes the input one token at a time as it is
+     * requested, rather than building the whole token list up front. Errors
+     * are thrown as a {@link ParseException} from {@link Iterator#next()}.
+     */
+    public Iterator<Token> tokens() {
+        return new Iterator<Token>() {
+
+            @Override
+            public boolean hasNext() {
+                return hasToken();
+            }
+
+            @Override
+            public Token next() {
+                if (!hasToken()) {
+                    throw new NoSuchElementException();
+                }
+                return lexToken();
+            }
+
+        };
+    }
+
+    /**
+     * Returns the symbol table identifiers are interned into.
+     */
+    public SymbolTable getSymbols() {
+        return symbols;
+    }
+
+    /**
+     * Skips any whitespace before the next token, returning true if there is
+     * a token left to lex.
+     */
+    private boolean hasToken() {
+        while (chars.has(0) && peek(SPACE)) {
+            chars.advance();
+            chars.skip();
+        }
+        return chars.has(0) && chars.index < chars.limit;
+    }
+
     /**
      * This method determines the type of the next token, delegating to the
      * appropriate lex method. As such, it is best for this method to not change
@@ -52,76 +314,114 @@ public final class Lexer {
      * by {@link #lex()}
      */
     public Token lexToken() {
-        if (peek("[A-Za-z]|[@]")) {
-            return lexIdentifier();
+        return emit(scanToken());
+    }
+
+    public Token lexIdentifier() {
+        return emit(scanIdentifier());
+    }
+
+    public Token lexNumber() {
+        return emit(scanNumber());
+    }
+
+    public Token lexCharacter() {
+        return emit(scanCharacter());
+    }
+
+    public Token lexString() {
+        return emit(scanString());
+    }
+
+    public Token lexOperator() {
+        return emit(scanOperator());
+    }
+
+    /**
+     * Matches the next token, returning its type. The token's characters are
+     * left matched in the char stream for {@link #emit(Token.Type)}, or for
+     * {@link #lexCompact()} to add to its buffer without creating a {@link
+     * Token}.
+     */
+    private Token.Type scanToken() {
+        if (peek(IDENTIFIER_START)) {
+            return scanIdentifier();
         }
-        else if (peek("[0]|[1-9]")) {
-            return lexNumber(); // figure out how to differentiate integer vs a decimal
+        else if (peek(NUMBER_START)) {
+            return scanNumber(); // figure out how to differentiate integer vs a decimal
         }
-        else if ((peek("[-]")) && (chars.has(1))) {
+        else if ((peek(MINUS)) && (chars.has(1))) {
             char temp = chars.get(1);
             if ((temp < 48)  || (temp > 57)) {
-                return lexOperator();
+                return scanOperator();
             }
             else {
-                return lexNumber();
+                return scanNumber();
             }
         }
-        else if (peek("[']")) {
-            return lexCharacter();
+        else if (peek(SINGLE_QUOTE)) {
+            return scanCharacter();
         }
-        else if (peek("\"")) {
-            return lexString();
+        else if (peek(DOUBLE_QUOTE)) {
+            return scanString();
         }
-        return lexOperator();
+        return scanOperator();
     }
 
-    public Token lexIdentifier() {
+    /**
+     * Emits the token matched by a scan method, interning it if it's an
+     * identifier.
+     */
+    private Token emit(Token.Type type) {
+        return type == Token.Type.IDENTIFIER ? chars.emit(type, symbols) : chars.emit(type);
+    }
+
+    private Token.Type scanIdentifier() {
         int start = chars.index;
         int current = start;
-        match("[A-Za-z]|[@]");
+        match(IDENTIFIER_START);
         current++;
-        while (match("[A-Za-z0-9_-]")) {
+        while (match(IDENTIFIER_PART)) {
             current++;
         }
-        return chars.emit(Token.Type.IDENTIFIER);
+        return Token.Type.IDENTIFIER;
     }
 
-    public Token lexNumber() {
+    private Token.Type scanNumber() {
         int current = chars.index; // keep track of current index, in case of errors
         boolean makeDecimal = false; // if a '.' is found, set to true and return a decimal
         boolean isNegative = false;
         boolean leadingZero = false;
 
-        if (match("[0]")) {
+        if (match(ZERO)) {
             current++;
             leadingZero = true;
         }
-        if (match("[-]")) {
+        if (match(MINUS)) {
             current++;
             isNegative = true;
-            if (match("[0]")) {
+            if (match(ZERO)) {
                 leadingZero = true;
             }
         }
-        while (peek("[0-9]|[.]|[-]")) {
-            if (isNegative && peek("[-]")) {
+        while (peek(NUMBER_PART)) {
+            if (isNegative && peek(MINUS)) {
                 throw new ParseException("Invalid negative number at index: ", current);
             }
-            else if (makeDecimal && peek("[.]")) {
+            else if (makeDecimal && peek(DOT)) {
                 throw new ParseException("Invalid decimal at index: ", current);
             }
-            else if (leadingZero && (!peek("[.]"))) {
+            else if (leadingZero && (!peek(DOT))) {
                 throw new ParseException("Invalid number because of leading zero: ", current);
             }
-            else if (match("[-]")) {
+            else if (match(MINUS)) {
                 current++;
                 isNegative = true;
             }
-            else if (match("[.]")) {
+            else if (match(DOT)) {
                 current++;
                 makeDecimal = true;
-                if (!peek("[0-9]")) {
+                if (!peek(DIGIT)) {
                     throw new ParseException("No value after the decimal point at index: ", current);
                 }
                 // if it is a leading zero followed by a decimal, no error
@@ -129,7 +429,7 @@ public final class Lexer {
                     leadingZero = false;
                 }
             }
-            else if (match("[0-9]")) {
+            else if (match(DIGIT)) {
                 current++;
             }
         }
@@ -141,24 +441,24 @@ public final class Lexer {
             throw new ParseException("Cannot have a negative zero. Check index: ", current);
         }
         if (makeDecimal) {
-            return chars.emit(Token.Type.DECIMAL);
+            return Token.Type.DECIMAL;
         }
-        return chars.emit(Token.Type.INTEGER);
+        return Token.Type.INTEGER;
     }
 
-    public Token lexCharacter() {
+    private Token.Type scanCharacter() {
         int current = chars.index;
         if (chars.has(2)) {
-            match("[']");
+            match(SINGLE_QUOTE);
             current++;
-            if (match("[^'\\n\\r\\\\]")) {
+            if (match(LITERAL_CHARACTER)) {
                 current++;
             }
             else {
                 lexEscape();
             }
             // check for a closing '
-            if (match("[']")) {
+            if (match(SINGLE_QUOTE)) {
                 current++;
             }
             else {
@@ -168,37 +468,40 @@ public final class Lexer {
         else {
             throw new ParseException("Invalid character at index: ", current);
         }
-        return chars.emit(Token.Type.CHARACTER);
+        return Token.Type.CHARACTER;
     }
 
-    public Token lexString() {
+    private Token.Type scanString() {
         int current = chars.index;
-        match("\"");
+        match(DOUBLE_QUOTE);
         current++;
         // run until a double quote
-        while (peek("[^\"]"))
+        while (peek(NOT_DOUBLE_QUOTE))
         {
-            if (match("[^'\\n\\r\\\\]")) {
+            if (match(STRING_CHARACTER)) {
                 current++;
             }
-            else {
+            else if (peek(BACKSLASH) && chars.has(1)) {
                 lexEscape();
                 current++;
                 current++;
             }
+            else {
+                throw new ParseException("Invalid character in string at index: ", chars.index);
+            }
         }
         // check for a closing '
-        if (match("\"")) {
+        if (match(DOUBLE_QUOTE)) {
             current++;
         }
         else {
             throw new ParseException("Missing double quote at index: ", current);
         }
-        return chars.emit(Token.Type.STRING);
+        return Token.Type.STRING;
     }
 
     public void lexEscape() {
-        if ((peek("[\\\\]")) && (chars.has(1))) {
+        if ((peek(BACKSLASH)) && (chars.has(1))) {
             // get the index of the next character and check for if it needs to be skipped over
             char checkNext = chars.get(1);
             chars.advance();
@@ -209,36 +512,36 @@ public final class Lexer {
                 chars.advance();
             }
             else if (checkNext != '\'') {
-                throw new ParseException("Invalid escape", -1);
+                throw new ParseException("Invalid escape at index: ", chars.index);
             }
         }
     }
 
-    public Token lexOperator() {
+    private Token.Type scanOperator() {
         int current = chars.index;
-        if (match("[!]")) {
+        if (match(BANG)) {
             current++;
-            match("[=]");
+            match(EQUALS);
         }
-        else if (match("[=]")) {
+        else if (match(EQUALS)) {
             current++;
-            if (peek("[=]")) {
-                match("[=]");
+            if (peek(EQUALS)) {
+                match(EQUALS);
                 current++;
             }
         }
-        else if (match("[&]")) {
+        else if (match(AMPERSAND)) {
             current++;
-            match("[&]");
+            match(AMPERSAND);
         }
-        else if (match("[|]")) {
+        else if (match(PIPE)) {
             current++;
-            match("[|]");
+            match(PIPE);
         }
         else {
-            match("[^ ]");
+            match(NON_SPACE);
         }
-        return chars.emit(Token.Type.OPERATOR);
+        return Token.Type.OPERATOR;
     }
 
     /**
@@ -248,13 +551,34 @@ public final class Lexer {
      */
     public boolean peek(String... patterns) {
         for (int i = 0; i < patterns.length; i++) {
-            if (!chars.has(i) || !String.valueOf(chars.get(i)).matches(patterns[i])) {
+            if (!chars.has(i) || !CharClass.of(patterns[i]).test(chars.get(i))) {
                 return false;
             }
         }
         return true;
     }
 
+    /**
+     * Returns true if the next character is in the given class. This is the
+     * single-character form of {@link #peek(String...)} used by the lex
+     * methods, which avoids the pattern lookup and varargs array.
+     */
+    private boolean peek(CharClass charClass) {
+        return chars.has(0) && charClass.test(chars.get(0));
+    }
+
+    /**
+     * Returns true in the same way as {@link #peek(CharClass)}, advancing the
+     * character stream past the character if it matched.
+     */
+    private boolean match(CharClass charClass) {
+        boolean peek = peek(charClass);
+        if (peek) {
+            chars.advance();
+        }
+        return peek;
+    }
+
     /**
      * Returns true in the same way as {@link #peek(String...)}, but also
      * advances the character stream past all matched characters if peek returns
@@ -270,6 +594,136 @@ public final class Lexer {
         return peek;
     }
 
+    /**
+     * The tokens and errors from {@link #lexRecovering()}. Each error has a
+     * matching {@link Token.Type#ERROR} token in the token list.
+     */
+    public static final class Result {
+
+        private final List<Token> tokens;
+        private final List<ParseException> errors;
+
+        public Result(List<Token> tokens, List<ParseException> errors) {
+            this.tokens = tokens;
+            this.errors = errors;
+        }
+
+        public List<Token> getTokens() {
+            return tokens;
+        }
+
+        public List<ParseException> getErrors() {
+            return errors;
+        }
+
+        public boolean hasErrors() {
+            return !errors.isEmpty();
+        }
+
+    }
+
+    /**
+     * One region of the input for {@link #lexParallel(ForkJoinPool)}. Lexing
+     * errors are kept rather than thrown so that the first one in the input
+     * can be rethrown as is.
+     */
+    private static final class Chunk extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Lexer lexer;
+        private final SymbolTable symbols;
+        private List<Token> tokens;
+        private ParseException error;
+
+        private Chunk(CharSequence input, SymbolTable symbols, int start, int end) {
+            this.lexer = new Lexer(input, symbols, start, end);
+            this.symbols = symbols;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                tokens = lexer.lex();
+            } catch (ParseException e) {
+                error = e;
+            }
+        }
+
+        /**
+         * Replaces identifiers interned in this chunk's own table with the
+         * given ids and the shared table's strings.
+         */
+        private void remap(int[] ids, SymbolTable shared) {
+            for (int i = 0; i < tokens.size(); i++) {
+                Token token = tokens.get(i);
+                if (token.getType() == Token.Type.IDENTIFIER) {
+                    int symbol = ids[token.getSymbol()];
+                    tokens.set(i, new Token(token.getType(), null, shared.getName(symbol), token.getIndex(), token.getLength(), symbol));
+                }
+            }
+        }
+
+    }
+
+    /**
+     * A precomputed table for a single peek pattern. Each pattern is compiled
+     * once and its result for every ASCII character is stored in a 128-bit
+     * bitmap, so testing a character is a shift and a mask instead of
+     * compiling a regex and allocating a string. Characters outside ASCII fall
+     * back to the compiled pattern, which keeps the result identical to
+     * {@code String.valueOf(c).matches(pattern)}.
+     */
+    private static final class CharClass {
+
+        private static final Map<String, CharClass> CLASSES = new ConcurrentHashMap<>();
+
+        private final Pattern pattern;
+        private final long low;
+        private final long high;
+
+        private CharClass(String regex) {
+            pattern = Pattern.compile(regex);
+            long low = 0;
+            long high = 0;
+            for (char c = 0; c < 128; c++) {
+                if (matches(c)) {
+                    if (c < 64) {
+                        low |= 1L << c;
+                    }
+                    else {
+                        high |= 1L << (c - 64);
+                    }
+                }
+            }
+            this.low = low;
+            this.high = high;
+        }
+
+        public static CharClass of(String regex) {
+            CharClass charClass = CLASSES.get(regex);
+            if (charClass == null) {
+                charClass = CLASSES.computeIfAbsent(regex, CharClass::new);
+            }
+            return charClass;
+        }
+
+        public boolean test(char c) {
+            if (c < 64) {
+                return (low & (1L << c)) != 0;
+            }
+            else if (c < 128) {
+                return (high & (1L << (c - 64))) != 0;
+            }
+            return matches(c);
+        }
+
+        private boolean matches(char c) {
+            return pattern.matcher(String.valueOf(c)).matches();
+        }
+
+    }
+
     /**
      * A helper class maintaining the input string, current index of the char
      * stream, and the current length of the token being matched.
@@ -277,23 +731,56 @@ public final class Lexer {
      * You should rely on peek/match for state management in nearly all cases.
      * The only field you need to access is {@link #index} for any {@link
      * ParseException} which is thrown.
+     *
+     * When created from a {@link Reader}, characters are read into a window
+     * starting at the current token. The window is compacted when it fills
+     * and only grows if a single token does not fit, while {@link #index}
+     * stays an absolute position in the input.
      */
     public static final class CharStream {
 
-        private final String input;
+        private static final int WINDOW = 8192;
+
+        private final CharSequence input;
+        private final Reader reader;
+        private char[] window;
+        private int windowStart = 0;
+        private int windowEnd = 0;
+        private boolean eof = false;
         private int index = 0;
         private int length = 0;
+        private int limit = Integer.MAX_VALUE;
+
+        public CharStream(CharSequence input) {
+            // a buffer's own position must not move the tokens viewing it
+            this.input = input instanceof CharBuffer ? ((CharBuffer) input).slice() : input;
+            this.reader = null;
+            this.limit = this.input.length();
+        }
 
-        public CharStream(String input) {
-            this.input = input;
+        public CharStream(Reader reader) {
+            this.input = null;
+            this.reader = reader;
+            this.window = new char[WINDOW];
         }
 
         public boolean has(int offset) {
-            return index + offset < input.length();
+            int position = index + offset;
+            if (input != null) {
+                return position < input.length();
+            }
+            return position < windowEnd || fill(position);
         }
 
         public char get(int offset) {
-            return input.charAt(index + offset);
+            int position = index + offset;
+            if (input != null) {
+                return input.charAt(position);
+            }
+            if (position >= windowEnd && !fill(position)) {
+                throw new IndexOutOfBoundsException("index " + position + ", length " + windowEnd);
+            }
+            return window[position - windowStart];
         }
 
         public void advance() {
@@ -305,10 +792,143 @@ public final class Lexer {
             length = 0;
         }
 
+        /**
+         * Returns the input being lexed, which is only available when the
+         * whole input is held in memory.
+         */
+        public CharSequence getInput() {
+            if (input == null) {
+                throw new IllegalStateException("The input is being read from a stream.");
+            }
+            return input;
+        }
+
         public Token emit(Token.Type type) {
             int start = index - length;
             skip();
-            return new Token(type, input.substring(start, index), start);
+            if (input != null) {
+                // the literal is only copied out of the input if it is used
+                return new Token(type, input, start, index - start);
+            }
+            return new Token(type, new String(window, start - windowStart, index - start), start);
+        }
+
+        /**
+         * Emits an identifier, interning it into the symbol table so that the
+         * token shares the table's string and carries its symbol id.
+         */
+        public Token emit(Token.Type type, SymbolTable symbols) {
+            int start = index - length;
+            skip();
+            int symbol;
+            if (input != null) {
+                symbol = symbols.intern(input, start, index - start);
+            }
+            else {
+                symbol = symbols.intern(CharBuffer.wrap(window, start - windowStart, index - start), 0, index - start);
+            }
+            return new Token(type, null, symbols.getName(symbol), start, index - start, symbol);
+        }
+
+        /**
+         * Adds the token to the buffer instead of creating a {@link Token},
+         * interning it if it's an identifier. The input must be held in
+         * memory.
+         */
+        void emit(Token.Type type, SymbolTable symbols, TokenBuffer buffer) {
+            int start = index - length;
+            skip();
+            int symbol = type == Token.Type.IDENTIFIER ? symbols.intern(input, start, index - start) : SymbolTable.NONE;
+            buffer.add(type, start, index - start, symbol);
+        }
+
+        /**
+         * Reads from the reader until the given position is buffered or the
+         * input ends, discarding characters before the current token.
+         */
+        private boolean fill(int position) {
+            while (position >= windowEnd && !eof) {
+                if (windowEnd - windowStart == window.length) {
+                    int tokenStart = index - length;
+                    System.arraycopy(window, tokenStart - windowStart, window, 0, windowEnd - tokenStart);
+                    windowStart = tokenStart;
+                    if (windowEnd - windowStart > window.length / 2) {
+                        window = Arrays.copyOf(window, window.length * 2);
+                    }
+                }
+                int read;
+                try {
+                    read = reader.read(window, windowEnd - windowStart, window.length - (windowEnd - windowStart));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                if (read < 0) {
+                    eof = true;
+                }
+                else {
+                    windowEnd += read;
+                }
+            }
+            return position < windowEnd;
+        }
+
+    }
+
+    /**
+     * A reader decoding a file channel through memory-mapped regions, which
+     * are remapped as decoding moves through the file.
+     */
+    private static final class MappedReader extends Reader {
+
+        private static final long REGION = 1 << 26;
+
+        private final FileChannel channel;
+        private final CharsetDecoder decoder;
+        private final long size;
+        private ByteBuffer bytes = ByteBuffer.allocate(0);
+        private long mapped = 0;
+        private boolean flushed = false;
+
+        private MappedReader(FileChannel channel, Charset charset) throws IOException {
+            this.channel = channel;
+            this.decoder = charset.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            this.size = channel.size();
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            CharBuffer out = CharBuffer.wrap(buffer, offset, length);
+            while (out.position() == offset && !flushed) {
+                boolean last = mapped + bytes.limit() == size;
+                CoderResult result = decoder.decode(bytes, out, last);
+                if (result.isError()) {
+                    result.throwException();
+                }
+                if (result.isOverflow()) {
+                    break;
+                }
+                if (last) {
+                    decoder.flush(out);
+                    flushed = true;
+                }
+                else if (out.position() == offset) {
+                    // remap from the first undecoded byte, which keeps a
+                    // character split across regions together
+                    mapped += bytes.position();
+                    bytes = channel.map(FileChannel.MapMode.READ_ONLY, mapped, Math.min(REGION, size - mapped));
+                }
+            }
+            int read = out.position() - offset;
+            return read == 0 && flushed ? -1 : read;
+        }
+
+        @Override
+        public void close() {
         }
 
     }
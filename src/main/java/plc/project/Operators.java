@@ -0,0 +1,231 @@
+package plc.project;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+
+/**
+ * The binary operators on plain values, shared by the {@link Interpreter} and
+ * the {@link Compiler} so that both evaluate them the same way. The operands
+ * have already been evaluated; {@code &&}, {@code ||} and the type check on
+ * the left operand of {@code ^} happen before the right operand is, so the
+ * callers handle those themselves.
+ *
+ * Integers are {@code BigInteger}s, except that compiled code keeps those
+ * which fit in a {@code long} as {@code Long}s, which are added, subtracted
+ * and multiplied with overflow checks and only become a {@code BigInteger}
+ * again when they overflow. Operations on two {@code BigInteger}s still give
+ * a {@code BigInteger}, and compiled code {@link #widen widens} any value
+ * which leaves it.
+ */
+final class Operators {
+
+    private Operators() {}
+
+    /**
+     * Applies one of the operators taking two evaluated operands.
+     */
+    static Object apply(String operator, Object left, Object right) {
+        switch (operator) {
+            case "<": return lessThan(left, right);
+            case ">": return greaterThan(left, right);
+            case "==": return equal(left, right);
+            case "!=": return !equal(left, right);
+            case "+": return add(left, right);
+            case "-": return subtract(left, right);
+            case "*": return multiply(left, right);
+            case "/": return divide(left, right);
+            case "^": return power(left, right);
+            default: throw unknown(operator);
+        }
+    }
+
+    static boolean lessThan(Object left, Object right) {
+        return compare(left, right) == -1;
+    }
+
+    static boolean greaterThan(Object left, Object right) {
+        return compare(left, right) == 1;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static int compare(Object left, Object right) {
+        Class<?> type = requireSameClass(left, right);
+        if (left instanceof Long && right instanceof Long) {
+            return Long.compare((Long) left, (Long) right);
+        }
+        else if (type == BigInteger.class) {
+            return big(left).compareTo(big(right));
+        }
+        return requireType(Comparable.class, left).compareTo(requireType(Comparable.class, right));
+    }
+
+    static boolean equal(Object left, Object right) {
+        if (left instanceof Long != right instanceof Long && typeOf(left) == BigInteger.class && typeOf(right) == BigInteger.class) {
+            return big(left).equals(big(right));
+        }
+        return left.equals(right);
+    }
+
+    static Object add(Object left, Object right) {
+        if (left instanceof Long && right instanceof Long) {
+            try {
+                return Math.addExact((Long) left, (Long) right);
+            } catch (ArithmeticException e) {
+                return big(left).add(big(right));
+            }
+        }
+        if (left.getClass().equals(String.class) || right.getClass().equals(String.class)) {
+            return left.toString().concat(right.toString());
+        }
+        Class<?> type = requireSameClass(left, right);
+        if (type == BigInteger.class) {
+            return integer(big(left).add(big(right)), left, right);
+        }
+        else if (type == BigDecimal.class) {
+            return ((BigDecimal) left).add((BigDecimal) right);
+        }
+        throw undefined("+", left);
+    }
+
+    static Object subtract(Object left, Object right) {
+        if (left instanceof Long && right instanceof Long) {
+            try {
+                return Math.subtractExact((Long) left, (Long) right);
+            } catch (ArithmeticException e) {
+                return big(left).subtract(big(right));
+            }
+        }
+        Class<?> type = requireSameClass(left, right);
+        if (type == BigInteger.class) {
+            return integer(big(left).subtract(big(right)), left, right);
+        }
+        else if (type == BigDecimal.class) {
+            return ((BigDecimal) left).subtract((BigDecimal) right);
+        }
+        throw undefined("-", left);
+    }
+
+    static Object multiply(Object left, Object right) {
+        if (left instanceof Long && right instanceof Long) {
+            try {
+                return Math.multiplyExact((Long) left, (Long) right);
+            } catch (ArithmeticException e) {
+                return big(left).multiply(big(right));
+            }
+        }
+        Class<?> type = requireSameClass(left, right);
+        if (type == BigInteger.class) {
+            return integer(big(left).multiply(big(right)), left, right);
+        }
+        else if (type == BigDecimal.class) {
+            return ((BigDecimal) left).multiply((BigDecimal) right);
+        }
+        throw undefined("*", left);
+    }
+
+    static Object divide(Object left, Object right) {
+        Class<?> type = requireSameClass(left, right);
+        if (type == BigInteger.class) {
+            if (right instanceof Long ? (Long) right == 0 : ((BigInteger) right).signum() == 0) {
+                throw new RuntimeException("Cannot divide by zero");
+            }
+            // both round towards zero, and only MIN_VALUE / -1 overflows
+            if (left instanceof Long && right instanceof Long && ((Long) left != Long.MIN_VALUE || (Long) right != -1)) {
+                return (Long) left / (Long) right;
+            }
+            return integer(big(left).divide(big(right)), left, right);
+        }
+        else if (type == BigDecimal.class) {
+            if (right.equals(new BigDecimal("0.0"))) {
+                throw new RuntimeException("Cannot divide by zero");
+            }
+            return ((BigDecimal) left).divide((BigDecimal) right, RoundingMode.HALF_EVEN);
+        }
+        throw undefined("/", left);
+    }
+
+    static Object power(Object left, Object right) {
+        BigInteger base = requireInteger(left);
+        int exponent = requireInteger(right).intValue();
+        if (exponent < 1) {
+            return integer(BigInteger.ZERO, left, right);
+        }
+        return integer(base.pow(exponent), left, right);
+    }
+
+    /**
+     * Returns the error for an operator which isn't a binary operator.
+     */
+    static RuntimeException unknown(String operator) {
+        return new RuntimeException("Unknown binary operator " + operator + ".");
+    }
+
+    // the error for operands of the same type which the operator doesn't
+    // apply to, such as two booleans added together
+    private static RuntimeException undefined(String operator, Object operand) {
+        return new RuntimeException("The operator " + operator + " is not defined for " + typeOf(operand).getName() + ".");
+    }
+
+    /**
+     * Returns an integer as a {@code Long} if it fits in one.
+     */
+    static Object narrow(Object value) {
+        if (value instanceof BigInteger && ((BigInteger) value).bitLength() < 64) {
+            return ((BigInteger) value).longValue();
+        }
+        return value;
+    }
+
+    /**
+     * Returns a value as the rest of the interpreter sees it, with a
+     * {@code Long} turned back into a {@code BigInteger}.
+     */
+    static Object widen(Object value) {
+        return value instanceof Long ? BigInteger.valueOf((Long) value) : value;
+    }
+
+    // the result of an operation on integers, which is narrowed if either
+    // operand was, so that only compiled code ever sees a Long
+    private static Object integer(BigInteger result, Object left, Object right) {
+        return left instanceof Long || right instanceof Long ? narrow(result) : result;
+    }
+
+    private static BigInteger big(Object integer) {
+        return integer instanceof Long ? BigInteger.valueOf((Long) integer) : (BigInteger) integer;
+    }
+
+    private static Class<?> typeOf(Object value) {
+        return value instanceof Long ? BigInteger.class : value.getClass();
+    }
+
+    private static Class<?> requireSameClass(Object left, Object right) {
+        Class<?> type = typeOf(left);
+        if (!type.equals(typeOf(right))) {
+            throw new RuntimeException("Both expressions must be of the same class type");
+        }
+        return type;
+    }
+
+    /**
+     * Ensures a value is an integer, which may be narrowed.
+     */
+    static BigInteger requireInteger(Object value) {
+        if (value instanceof Long) {
+            return BigInteger.valueOf((Long) value);
+        }
+        return requireType(BigInteger.class, value);
+    }
+
+    /**
+     * Ensures a value is of the appropriate type.
+     */
+    static <T> T requireType(Class<T> type, Object value) {
+        if (type.isInstance(value)) {
+            return type.cast(value);
+        } else {
+            throw new RuntimeException("Expected type " + type.getName() + ", received " + typeOf(value).getName() + ".");
+        }
+    }
+
+}
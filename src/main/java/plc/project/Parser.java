@@ -3,6 +3,8 @@ package plc.project;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
 
@@ -21,9 +23,46 @@ import java.util.Optional;
  */
 public final class Parser {
 
+    // binary operators and their precedence, from loosest to tightest
+    private static final String[] OPERATORS = {"&&", "||", "<", ">", "==", "!=", "+", "-", "*", "/", "^"};
+    private static final int[] PRECEDENCE = {1, 1, 2, 2, 2, 2, 3, 3, 4, 4, 4};
+
+    // the operator starting with each ASCII character, as no two share one
+    private static final int[] OPERATOR_INDEX = new int[128];
+
+    static {
+        Arrays.fill(OPERATOR_INDEX, -1);
+        for (int i = 0; i < OPERATORS.length; i++) {
+            OPERATOR_INDEX[OPERATORS[i].charAt(0)] = i;
+        }
+    }
+
+    private static final int LOGICAL = 1;
+    private static final int COMPARISON = 2;
+    private static final int ADDITIVE = 3;
+    private static final int MULTIPLICATIVE = 4;
+    private static final int PRIMARY = 5;
+
     private final TokenStream tokens;
 
+    // operators waiting for their right operand in parseBinary and their left
+    // operands, kept between calls since it doesn't recurse
+    private int[] operators = new int[16];
+    private Ast.Expression[] operands = new Ast.Expression[16];
+    private final List<Frame> frames = new ArrayList<>();
+
+    // errors recorded by parseRecovering, null when errors are thrown instead
+    private List<ParseException> errors;
+
     public Parser(List<Token> tokens) {
+        this(tokens.iterator());
+    }
+
+    /**
+     * Creates a parser which reads tokens as it needs them, such as from
+     * {@link Lexer#tokens()}, so the token list is never built.
+     */
+    public Parser(Iterator<Token> tokens) {
         this.tokens = new TokenStream(tokens);
     }
 
@@ -31,56 +70,87 @@ public final class Parser {
      * Parses the {@code source} rule.
      */
     public Ast.Source parseSource() throws ParseException {
+        return parseSource(null);
+    }
+
+    /**
+     * Parses the {@code source} rule, telling the listener, unless it's null,
+     * the tokens each declaration was parsed from. Used by {@link
+     * IncrementalParser} so that it parses the whole source in the same way.
+     */
+    Ast.Source parseSource(DeclarationListener listener) throws ParseException {
         List<Ast.Global> listGlobals = new ArrayList<>();
         List<Ast.Function> listFunctions = new ArrayList<>();
-        if (!tokens.has(0)) {
-            return new Ast.Source(listGlobals, listFunctions);
-        }
-        String str = tokens.get(0).getLiteral();
         // list of globals
-        while ((str.equals("LIST")) || (str.equals("VAR")) || (str.equals("VAL"))) {
-            if ((str.equals("LIST")) || (str.equals("VAR")) || (str.equals("VAL"))) {
-                Ast.Global global = parseGlobal();
-                listGlobals.add(global);
-            }
-            if (tokens.has(0)) {
-                str = tokens.get(0).getLiteral();
-                if (str.equals(";")) {
-                    tokens.advance();
-                    if (tokens.has(0)) {
-                        str = tokens.get(0).getLiteral();
-                    }
-                }
-            }
-            else {
-                break;
+        while (peekGlobal()) {
+            int first = tokens.index;
+            listGlobals.add(parseGlobal());
+            match(";");
+            if (listener != null) {
+                listener.parsed(listGlobals.size() - 1, first, tokens.index);
             }
         }
-        while (str.equals("FUN")) {
-            if (str.equals("FUN")) {
-                Ast.Function function = parseFunction();
-                listFunctions.add(function);
+        while (peekKeyword(SymbolTable.FUN)) {
+            int first = tokens.index;
+            listFunctions.add(parseFunction());
+            match(";");
+            if (listener != null) {
+                listener.parsed(listGlobals.size() + listFunctions.size() - 1, first, tokens.index);
             }
-            if (tokens.has(0)) {
-                str = tokens.get(0).getLiteral();
-                if (str.equals(";")) {
-                    tokens.advance();
-                    if (tokens.has(0)) {
-                        str = tokens.get(0).getLiteral();
+        }
+        if (peekGlobal()) {
+            throw new ParseException("Must parse globals before functions", tokens.index);
+        }
+        return new Ast.Source(listGlobals, listFunctions);
+    }
+
+    /**
+     * Parses the {@code source} rule like {@link #parseSource()}, but instead
+     * of stopping at the first invalid declaration or statement it records
+     * the error and keeps going, so that one pass reports every syntax error.
+     *
+     * After an error in a statement, tokens are skipped up to and including
+     * the next {@code ;}, or up to the {@code END}, {@code ELSE}, {@code CASE}
+     * or {@code DEFAULT} closing its block. After an error in a declaration
+     * they are skipped up to the next {@code FUN}, {@code VAR}, {@code VAL}
+     * or {@code LIST}. The returned source holds everything which parsed,
+     * except for declarations that failed outside of their statements.
+     */
+    public Result parseRecovering() {
+        List<Ast.Global> listGlobals = new ArrayList<>();
+        List<Ast.Function> listFunctions = new ArrayList<>();
+        errors = new ArrayList<>();
+        while (tokens.has(0)) {
+            int start = tokens.index;
+            try {
+                if (peekGlobal()) {
+                    if (!listFunctions.isEmpty()) {
+                        errors.add(new ParseException("Must parse globals before functions", tokens.index));
                     }
+                    listGlobals.add(parseGlobal());
+                    match(";");
+                }
+                else if (peekKeyword(SymbolTable.FUN)) {
+                    listFunctions.add(parseFunction());
+                    match(";");
+                }
+                else {
+                    throw new ParseException("Expected a global or function ", tokens.index);
+                }
+            } catch (ParseException e) {
+                errors.add(e);
+                // the error may be at the start of the next declaration
+                if (tokens.index == start) {
+                    tokens.advance();
+                }
+                while (tokens.has(0) && !peekGlobal() && !peekKeyword(SymbolTable.FUN)) {
+                    tokens.advance();
                 }
-            }
-            else {
-                break;
-            }
-        }
-        if (tokens.has(0)) {
-            str = tokens.get(0).getLiteral();
-            if ((str.equals("LIST")) || (str.equals("VAR")) || (str.equals("VAL"))) {
-                throw new ParseException("Must parse globals before functions", tokens.index);
             }
         }
-        return new Ast.Source(listGlobals, listFunctions);
+        Result result = new Result(new Ast.Source(listGlobals, listFunctions), errors);
+        errors = null;
+        return result;
     }
 
     /**
@@ -88,30 +158,22 @@ public final class Parser {
      * next tokens start a global, aka {@code LIST|VAL|VAR}.
      */
     public Ast.Global parseGlobal() throws ParseException {
-        String str = tokens.get(0).getLiteral();
         Ast.Global global;
-        if (str.contains("LIST")) {
+        if (peekKeyword(SymbolTable.LIST)) {
             global = parseList();
         }
-        else if (str.contains("VAR")) {
+        else if (peekKeyword(SymbolTable.VAR)) {
             global = parseMutable();
         }
-        else if (str.contains("VAL")) {
+        else if (peekKeyword(SymbolTable.VAL)) {
             global = parseImmutable();
         }
         else {
             throw new ParseException("Invalid global ", tokens.index);
         }
-        if (tokens.has(0)) {
-            str = tokens.get(0).getLiteral();
-        }
-        else {
-            throw new ParseException("Missing semi-colon ", tokens.index);
-        }
-        if (!str.equals(";")) {
+        if (!match(";")) {
             throw new ParseException("Missing semi-colon ", tokens.index);
         }
-        tokens.advance();
         return global;
     }
 
@@ -120,8 +182,7 @@ public final class Parser {
      * next token declares a list, aka {@code LIST}.
      */
     public Ast.Global parseList() throws ParseException {
-        String str = tokens.get(0).getLiteral();
-        if (!str.equals("LIST")) {
+        if (!peekKeyword(SymbolTable.LIST)) {
             throw new ParseException("Invalid list ", tokens.index);
         }
         tokens.advance();
@@ -129,45 +190,30 @@ public final class Parser {
             throw new ParseException("List must be followed by identifier ", tokens.index);
         }
         String name = tokens.get(-1).getLiteral();
-        str = tokens.get(0).getLiteral();
-        if (!str.equals(":")) {
+        if (!match(":")) {
             throw new ParseException("Should have a colon before the identifer", tokens.index);
         }
-        tokens.advance();
         if (!match(Token.Type.IDENTIFIER)) {
             throw new ParseException("Type must be an identifier", tokens.index);
         }
         String typeName = tokens.get(-1).getLiteral();
-        str = tokens.get(0).getLiteral();
-        if (!str.equals("=")) {
+        if (!match("=")) {
             throw new ParseException("Identifier must be followed by an equal sign ", tokens.index);
         }
-        tokens.advance();
-        str = tokens.get(0).getLiteral();
-        if (!str.equals("[")) {
+        if (!match("[")) {
             throw new ParseException("Should be an open bracket ", tokens.index);
         }
-        tokens.advance();
-        str = tokens.get(0).getLiteral();
-        if (str.equals("]")) {
-            tokens.advance();
+        if (match("]")) {
             return new Ast.Global(name, typeName,true , Optional.empty());
         }
         List<Ast.Expression> list = new ArrayList<>();
         Ast.Expression expression = parseExpression();
         list.add(expression);
-        str = tokens.get(0).getLiteral();
-        tokens.advance();
-        if (str.equals("]")) {
-            return new Ast.Global(name, typeName, true, Optional.of(expression));
-        }
-        while (str.equals(",")) {
+        while (match(",")) {
             expression = parseExpression();
             list.add(expression);
-            str = tokens.get(0).getLiteral();
-            tokens.advance();
         }
-        if (!str.equals("]")) {
+        if (!match("]")) {
             throw new ParseException("Should be a closed bracket ", tokens.index);
         }
         // not sure how to return a list of elements
@@ -180,8 +226,7 @@ public final class Parser {
      * next token declares a mutable global variable, aka {@code VAR}.
      */
     public Ast.Global parseMutable() throws ParseException {
-        String str = tokens.get(0).getLiteral();
-        if (!str.equals("VAR")) {
+        if (!peekKeyword(SymbolTable.VAR)) {
             throw new ParseException("Invalid val ", tokens.index);
         }
         tokens.advance();
@@ -189,23 +234,17 @@ public final class Parser {
             throw new ParseException("Identifier must follow VAR ", tokens.index);
         }
         String name = tokens.get(-1).getLiteral();
-        if (!tokens.get(0).getLiteral().equals(":")) {
+        if (!match(":")) {
             throw new ParseException("Identifier must be followed by a colon", tokens.index);
         }
-        tokens.advance();
         if (!match(Token.Type.IDENTIFIER)) {
             throw new ParseException("Identifier must follow colon ", tokens.index);
         }
         String typeName = tokens.get(-1).getLiteral();
-        // check if there are more tokens, if not return
-        if (!tokens.has(1)) {
+        // the value is optional, the semi-colon is checked by parseGlobal
+        if (!match("=")) {
             return new Ast.Global(name,typeName, true, Optional.empty());
         }
-        str = tokens.get(0).getLiteral();
-        if (!str.equals("=")) {
-            throw new ParseException("Invalid operator ", tokens.index);
-        }
-        tokens.advance();
         Ast.Expression expression = parseExpression();
         return new Ast.Global(name, typeName,true, Optional.of(expression));
     }
@@ -215,8 +254,7 @@ public final class Parser {
      * next token declares an immutable global variable, aka {@code VAL}.
      */
     public Ast.Global parseImmutable() throws ParseException {
-        String str = tokens.get(0).getLiteral();
-        if (!str.equals("VAL")) {
+        if (!peekKeyword(SymbolTable.VAL)) {
             throw new ParseException("Invalid val ", tokens.index);
         }
         tokens.advance();
@@ -224,19 +262,16 @@ public final class Parser {
             throw new ParseException("Identifier must follow VAL ", tokens.index);
         }
         String name = tokens.get(-1).getLiteral();
-        if (!tokens.get(0).getLiteral().equals(":")) {
+        if (!match(":")) {
             throw new ParseException("Identifier must be followed by a colon", tokens.index);
         }
-        tokens.advance();
         if (!match(Token.Type.IDENTIFIER)) {
             throw new ParseException("Identifier must follow colon ", tokens.index);
         }
         String typeName = tokens.get(-1).getLiteral();
-        str = tokens.get(0).getLiteral();
-        if (!str.equals("=")) {
+        if (!match("=")) {
             throw new ParseException("Invalid operator ", tokens.index);
         }
-        tokens.advance();
         Ast.Expression expression = parseExpression();
         return new Ast.Global(name, typeName, false, Optional.of(expression));
     }
@@ -246,8 +281,7 @@ public final class Parser {
      * next tokens start a method, aka {@code FUN}.
      */
     public Ast.Function parseFunction() throws ParseException {
-        String str = tokens.get(0).getLiteral();
-        if (!str.equals("FUN")) {
+        if (!peekKeyword(SymbolTable.FUN)) {
             throw new ParseException("Invalid function ", tokens.index);
         }
         tokens.advance();
@@ -255,69 +289,51 @@ public final class Parser {
             throw new ParseException("Missing identifier in function ", tokens.index);
         }
         String strLiteral = tokens.get(-1).getLiteral();
-        str = tokens.get(0).getLiteral();
-        if (!str.equals("(")) {
+        if (!match("(")) {
             throw new ParseException("Missing opening parenthesis ", tokens.index);
         }
-        tokens.advance();
         List<String> parameters = new ArrayList<>();
         List<String> parameterTypes = new ArrayList<>();
         if (match(Token.Type.IDENTIFIER)) {
-            parameters.add(tokens.get(-1).toString());
-            str = tokens.get(0).getLiteral();
-            if (!str.equals(":")) {
+            parameters.add(tokens.get(-1).getLiteral());
+            if (!match(":")) {
                 throw new ParseException("Must follow identifier with a colon", tokens.index);
             }
-            tokens.advance();
             if (!match(Token.Type.IDENTIFIER)) {
                 throw new ParseException("Missing identifier in function ", tokens.index);
             }
             parameterTypes.add(tokens.get(-1).getLiteral());
-            str = tokens.get(0).getLiteral();
-            while (str.equals(",")) {
-                tokens.advance();
-                if (match(Token.Type.IDENTIFIER)) {
-                    parameters.add(tokens.get(-1).toString());
-                    str = tokens.get(0).getLiteral();
-                    if (!str.equals(":")) {
-                        throw new ParseException("Must follow identifier with a colon", tokens.index);
-                    }
-                    if (!match(Token.Type.IDENTIFIER)) {
-                        throw new ParseException("Missing identifier in function ", tokens.index);
-                    }
-                    parameterTypes.add(tokens.get(-1).getLiteral());
-                    str = tokens.get(0).getLiteral();
-                }
-                else {
+            while (match(",")) {
+                if (!match(Token.Type.IDENTIFIER)) {
                     throw new ParseException("Invalid identifier ", tokens.index);
                 }
+                parameters.add(tokens.get(-1).getLiteral());
+                if (!match(":")) {
+                    throw new ParseException("Must follow identifier with a colon", tokens.index);
+                }
+                if (!match(Token.Type.IDENTIFIER)) {
+                    throw new ParseException("Missing identifier in function ", tokens.index);
+                }
+                parameterTypes.add(tokens.get(-1).getLiteral());
             }
         }
-        else {
-            str = tokens.get(0).getLiteral();
-        }
-        if (!str.equals(")")) {
+        if (!match(")")) {
             throw new ParseException("Missing closing parenthesis ", tokens.index);
         }
-        tokens.advance();
-        str = tokens.get(0).getLiteral();
         Optional<String> returnTypeName = Optional.empty();
-        if (str.equals(":")) {
-            tokens.advance();
+        if (match(":")) {
             if (!match(Token.Type.IDENTIFIER)) {
                 throw new ParseException("Missing identifier in function ", tokens.index);
             }
             returnTypeName = Optional.of(tokens.get(-1).getLiteral());
-            str = tokens.get(0).getLiteral();
         }
-        if (!str.equals("DO")) {
+        if (!peekKeyword(SymbolTable.DO)) {
             throw new ParseException("Missing DO ", tokens.index);
         }
         tokens.advance();
-        List<Ast.Statement> statements = new ArrayList<>();
-        statements = parseBlock();
-        if ((!tokens.has(0)) || (!tokens.get(0).getLiteral().equals("END"))) {
-            throw new ParseException("Invalid END to function ", -1);
+        List<Ast.Statement> statements = parseBlock();
+        if (!peekKeyword(SymbolTable.END)) {
+            throw new ParseException("Invalid END to function ", tokens.index);
         }
         tokens.advance();
         return new Ast.Function(strLiteral, parameters, parameterTypes, returnTypeName, statements);
@@ -330,61 +346,72 @@ public final class Parser {
     public List<Ast.Statement> parseBlock() throws ParseException {
         // need to account for 0-infinity statements being allowed
         List<Ast.Statement> list = new ArrayList<>();
-        String str = tokens.get(0).getLiteral();
-        while ((tokens.has(0)) && ((!str.equals("END")) && (!str.equals("ELSE")) && (!str.equals("DEFAULT")) && (!str.equals("CASE")))) {
-            Ast.Statement statement = parseStatement();
-            list.add(statement);
-            if (tokens.has(0)) {
-                str = tokens.get(0).getLiteral();
+        while ((tokens.has(0)) && (!peekBlockEnd()) && (!peekGlobal()) && (!peekKeyword(SymbolTable.FUN))) {
+            try {
+                list.add(parseStatement());
+            } catch (ParseException e) {
+                if (errors == null) {
+                    throw e;
+                }
+                errors.add(e);
+                synchronize();
             }
         }
         return list;
     }
 
+    /**
+     * Skips the rest of an invalid statement for {@link #parseRecovering()},
+     * up to and including its {@code ;}. Stops early at the end of the block
+     * or the start of another declaration, which the callers handle.
+     */
+    private void synchronize() {
+        while (tokens.has(0)) {
+            if (match(";")) {
+                return;
+            }
+            if (peekBlockEnd() || peekGlobal() || peekKeyword(SymbolTable.FUN)) {
+                return;
+            }
+            tokens.advance();
+        }
+    }
+
     /**
      * Parses the {@code statement} rule and delegates to the necessary method.
      * If the next tokens do not start a declaration, if, while, or return
      * statement, then it is an expression/assignment statement.
      */
     public Ast.Statement parseStatement() throws ParseException {
-        String str = tokens.get(0).getLiteral();
-        if (str.contains("LET")) {
+        if (peekKeyword(SymbolTable.LET)) {
             Ast.Statement.Declaration statement = parseDeclarationStatement();
             return statement;
         }
-        else if (str.contains("SWITCH")) {
+        else if (peekKeyword(SymbolTable.SWITCH)) {
             Ast.Statement.Switch statement = parseSwitchStatement();
             return statement;
         }
-        else if (str.contains("IF")) {
+        else if (peekKeyword(SymbolTable.IF)) {
             Ast.Statement.If statement = parseIfStatement();
             return statement;
         }
-        else if (str.contains("WHILE")) {
+        else if (peekKeyword(SymbolTable.WHILE)) {
             Ast.Statement.While statement = parseWhileStatement();
             return statement;
         }
-        else if (str.contains("RETURN")) {
+        else if (peekKeyword(SymbolTable.RETURN)) {
             Ast.Statement.Return statement = parseReturnStatement();
             return statement;
         }
         Ast.Expression leftExpression = parseExpression();
         Ast.Statement statement = new Ast.Statement.Expression(leftExpression);
-        while (peek(Token.Type.OPERATOR)) {
-            String str1 = tokens.get(0).getLiteral();
-            if (str1.equals("=")) {
-                match(Token.Type.OPERATOR);
-                Ast.Expression rightExpression = parseExpression();
-                statement = new Ast.Statement.Assignment(leftExpression, rightExpression);
-            }
-            else {
-                break;
-            }
+        while (match("=")) {
+            Ast.Expression rightExpression = parseExpression();
+            statement = new Ast.Statement.Assignment(leftExpression, rightExpression);
         }
-        if ((!tokens.has(0)) || (!tokens.get(0).getLiteral().equals(";"))) {
+        if (!match(";")) {
             throw new ParseException("Needs a semi-colon at the end ", tokens.index);
         }
-        tokens.advance();
         return statement;
     }
 
@@ -394,8 +421,7 @@ public final class Parser {
      * statement, aka {@code LET}.
      */
     public Ast.Statement.Declaration parseDeclarationStatement() throws ParseException {
-        String str = tokens.get(0).getLiteral();
-        if (!str.equals("LET")) {
+        if (!peekKeyword(SymbolTable.LET)) {
             throw new ParseException("Invalid Let statement ", tokens.index);
         }
         tokens.advance();
@@ -403,35 +429,21 @@ public final class Parser {
             throw new ParseException("Missing identifier in function ", tokens.index);
         }
         String strLiteral = tokens.get(-1).getLiteral();
-        if (!tokens.has(0)) {
-            throw new ParseException("Missing semicolon ", tokens.index);
-        }
-        str = tokens.get(0).getLiteral();
         Optional<String> typeName = Optional.empty();
-        if (str.equals(":")) {
-            tokens.advance();
+        if (match(":")) {
             if (!match(Token.Type.IDENTIFIER)) {
                 throw new ParseException("Identifier must follow the colon", tokens.index);
             }
             typeName = Optional.of(tokens.get(-1).getLiteral());
-            str = tokens.get(0).getLiteral();
         }
-        if (!tokens.has(0)) {
-            throw new ParseException("Missing semicolon ", tokens.index);
+        Optional<Ast.Expression> value = Optional.empty();
+        if (match("=")) {
+            value = Optional.of(parseExpression());
         }
-        if (str.equals("=")) {
-            tokens.advance();
-            Ast.Expression expression = parseExpression();
-            str = tokens.get(0).getLiteral();
-            if (str.equals(";")) {
-                return new Ast.Statement.Declaration(strLiteral, typeName, Optional.of(expression));
-            }
+        if (!match(";")) {
             throw new ParseException("Missing semicolon ", tokens.index);
         }
-        else if (str.equals(";")) {
-            return new Ast.Statement.Declaration(strLiteral, typeName, Optional.empty());
-        }
-        throw new ParseException("Invalid declarative statement ", tokens.index);
+        return new Ast.Statement.Declaration(strLiteral, typeName, value);
     }
 
     /**
@@ -440,31 +452,25 @@ public final class Parser {
      * {@code IF}.
      */
     public Ast.Statement.If parseIfStatement() throws ParseException {
-        String str = tokens.get(0).getLiteral();
-        if (!str.equals("IF")) {
+        if (!peekKeyword(SymbolTable.IF)) {
             throw new ParseException("Not if statement ", tokens.index);
         }
         tokens.advance();
         Ast.Expression expression = parseExpression();
-        str = tokens.get(0).getLiteral();
-        if (!str.equals("DO")) {
+        if (!peekKeyword(SymbolTable.DO)) {
             throw new ParseException("Missing DO in statement", tokens.index);
         }
         tokens.advance();
-        List<Ast.Statement> thenList = new ArrayList<>();
+        List<Ast.Statement> thenList = parseBlock();
         List<Ast.Statement> elseList = new ArrayList<>();
-        thenList = parseBlock();
-        if (!tokens.has(0)) {
-            throw new ParseException("Missing end statement ", tokens.index);
-        }
-        str = tokens.get(0).getLiteral();
-        if (str.equals("ELSE")) {
+        if (peekKeyword(SymbolTable.ELSE)) {
             tokens.advance();
             elseList = parseBlock();
         }
-        else if (!str.equals("END")) {
+        if (!peekKeyword(SymbolTable.END)) {
             throw new ParseException("Error missing END ", tokens.index);
         }
+        tokens.advance();
         Ast.Statement.If statement = new Ast.Statement.If(expression, thenList, elseList);
         return statement;
     }
@@ -475,37 +481,25 @@ public final class Parser {
      * {@code SWITCH}.
      */
     public Ast.Statement.Switch parseSwitchStatement() throws ParseException {
-        String str = tokens.get(0).getLiteral();
-        if (!str.contains("SWITCH")) {
+        if (!peekKeyword(SymbolTable.SWITCH)) {
             throw new ParseException("Not switch statement ", tokens.index);
         }
         tokens.advance();
         Ast.Expression expression = parseExpression();
         List<Ast.Statement.Case> cases = new ArrayList<>();
-        str = tokens.get(0).getLiteral();
-        while (str.equals("CASE")) {
+        while (peekKeyword(SymbolTable.CASE)) {
             Ast.Statement.Case caseStatement = parseCaseStatement();
             cases.add(caseStatement);
-            if (tokens.has(0)) {
-                str = tokens.get(0).getLiteral();
-            }
-            else {
-                throw new ParseException("Invalid case statement ", tokens.index);
-            }
         }
-        if (!str.equals("DEFAULT")) {
+        if (!peekKeyword(SymbolTable.DEFAULT)) {
             throw new ParseException("Invalid Default statement ", tokens.index);
         }
-        tokens.advance();
         Ast.Statement.Case defaultStatement = parseCaseStatement();
         cases.add(defaultStatement);
-        if (!tokens.has(0)) {
-            throw new ParseException("Missing END statement ", tokens.index);
-        }
-        str = tokens.get(0).getLiteral();
-        if (!str.equals("END")) {
+        if (!peekKeyword(SymbolTable.END)) {
             throw new ParseException("Invalid end statement ", tokens.index);
         }
+        tokens.advance();
         Ast.Statement.Switch statement = new Ast.Statement.Switch(expression, cases);
         return statement;
     }
@@ -516,38 +510,21 @@ public final class Parser {
      * default block of a switch statement, aka {@code CASE} or {@code DEFAULT}.
      */
     public Ast.Statement.Case parseCaseStatement() throws ParseException {
-        String str = tokens.get(0).getLiteral();
-        List<Ast.Statement> statements = new ArrayList<>();
-        List<Ast.Statement> temp = new ArrayList<>();
         Optional<Ast.Expression> optional = Optional.empty();
-        if (str.equals("CASE")) {
+        if (peekKeyword(SymbolTable.CASE)) {
             tokens.advance();
-
-            // might need to be rewritten
-            if (optional.isPresent()) {
-                optional = Optional.of(parseExpression());
-            }
-
-            str = tokens.get(0).getLiteral();
-            if (!str.equals(":")) {
+            optional = Optional.of(parseExpression());
+            if (!match(":")) {
                 throw new ParseException("Missing colon in case statement ", tokens.index);
             }
+        }
+        else if (peekKeyword(SymbolTable.DEFAULT)) {
             tokens.advance();
-            temp = parseBlock();
-            for (int i = 0; i < temp.size(); i++) {
-                statements.add(temp.get(i));
-            }
         }
-        else if (str.equals("DEFAULT")) {
-            List<Ast.Statement> defaultCases = new ArrayList<>();
-            defaultCases = parseBlock();
-            if (defaultCases.size() == 0) {
-                throw new ParseException("Missing DEFAULT statement ", tokens.index);
-            }
-            for (int i = 0; i < defaultCases.size(); i++) {
-                statements.add(defaultCases.get(i));
-            }
+        else {
+            throw new ParseException("Invalid case statement ", tokens.index);
         }
+        List<Ast.Statement> statements = parseBlock();
         Ast.Statement.Case caseStatement = new Ast.Statement.Case(optional, statements);
         return caseStatement;
     }
@@ -558,26 +535,20 @@ public final class Parser {
      * {@code WHILE}.
      */
     public Ast.Statement.While parseWhileStatement() throws ParseException {
-        String str = tokens.get(0).getLiteral();
-        if (!str.equals("WHILE")) {
+        if (!peekKeyword(SymbolTable.WHILE)) {
             throw new ParseException("Not WHILE statement ", tokens.index);
         }
         tokens.advance();
         Ast.Expression expression = parseExpression();
-        str = tokens.get(0).getLiteral();
-        if (!str.equals("DO")) {
+        if (!peekKeyword(SymbolTable.DO)) {
             throw new ParseException("Missing DO in statement", tokens.index);
         }
         tokens.advance();
-        List<Ast.Statement> whileList = new ArrayList<>();
-        whileList = parseBlock();
-        if (!tokens.has(0)) {
-            throw new ParseException("Missing end statement ", tokens.index);
-        }
-        str = tokens.get(0).getLiteral();
-        if (!str.equals("END")) {
+        List<Ast.Statement> whileList = parseBlock();
+        if (!peekKeyword(SymbolTable.END)) {
             throw new ParseException("Error missing END ", tokens.index);
         }
+        tokens.advance();
         Ast.Statement.While statement = new Ast.Statement.While(expression, whileList);
         return statement;
     }
@@ -588,17 +559,12 @@ public final class Parser {
      * {@code RETURN}.
      */
     public Ast.Statement.Return parseReturnStatement() throws ParseException {
-        String str = tokens.get(0).getLiteral();
-        if (!str.equals("RETURN")) {
+        if (!peekKeyword(SymbolTable.RETURN)) {
             throw new ParseException("Not RETURN statement ", tokens.index);
         }
         tokens.advance();
         Ast.Expression expression = parseExpression();
-        if (!tokens.has(0)) {
-            throw new ParseException("Missing semicolon ", tokens.index);
-        }
-        str = tokens.get(0).getLiteral();
-        if (!str.equals(";")) {
+        if (!match(";")) {
             throw new ParseException("Missing semicolon to return statement", tokens.index);
         }
         Ast.Statement.Return statement = new Ast.Statement.Return(expression);
@@ -609,98 +575,35 @@ public final class Parser {
      * Parses the {@code expression} rule.
      */
     public Ast.Expression parseExpression() throws ParseException {
-        Ast.Expression expression = parseLogicalExpression();
-        return expression;
+        return parseBinary(LOGICAL);
     }
 
     /**
      * Parses the {@code logical-expression} rule.
      */
     public Ast.Expression parseLogicalExpression() throws ParseException {
-        Ast.Expression leftExpression = parseComparisonExpression();
-        while (peek(Token.Type.OPERATOR)) {
-            String str = tokens.get(0).getLiteral();
-            if ((str.equals("&&")) || (str.equals("||"))) {
-                match(Token.Type.OPERATOR);
-                String operator = tokens.get(-1).getLiteral();
-                Ast.Expression rightExpression = parseComparisonExpression();
-                leftExpression = new Ast.Expression.Binary(operator,leftExpression,rightExpression);
-            }
-            else {
-                break;
-            }
-        }
-        return leftExpression;
+        return parseBinary(LOGICAL);
     }
 
     /**
      * Parses the {@code equality-expression} rule.
      */
     public Ast.Expression parseComparisonExpression() throws ParseException {
-        Ast.Expression leftExpression = parseAdditiveExpression();
-        while (peek(Token.Type.OPERATOR)) {
-            String str = tokens.get(0).toString();
-            String str1 = str.substring(9,10);
-            String str2 = str.substring(9,11);
-            if ((str1.equals("<")) || (str1.equals(">"))) {
-                match(Token.Type.OPERATOR);
-                String operator = tokens.get(-1).getLiteral();
-                Ast.Expression rightExpression = parseAdditiveExpression();
-                leftExpression = new Ast.Expression.Binary(operator,leftExpression,rightExpression);
-            }
-            else if ((str2.equals("==")) || (str2.equals("!="))) {
-                match(Token.Type.OPERATOR);
-                String operator = tokens.get(-1).getLiteral();
-                Ast.Expression rightExpression = parseAdditiveExpression();
-                leftExpression = new Ast.Expression.Binary(operator,leftExpression,rightExpression);
-            }
-            else {
-                break;
-            }
-        }
-        return leftExpression;
+        return parseBinary(COMPARISON);
     }
 
     /**
      * Parses the {@code additive-expression} rule.
      */
     public Ast.Expression parseAdditiveExpression() {
-        Ast.Expression leftExpression = parseMultiplicativeExpression();
-        while (peek(Token.Type.OPERATOR)) {
-            String str = tokens.get(0).toString();
-            str = str.substring(9,10);
-            if ((str.equals("+")) || (str.equals("-"))) {
-                match(Token.Type.OPERATOR);
-                String operator = tokens.get(-1).getLiteral();
-                Ast.Expression rightExpression = parseMultiplicativeExpression();
-                leftExpression = new Ast.Expression.Binary(operator,leftExpression,rightExpression);
-            }
-            else {
-                break;
-            }
-        }
-        return leftExpression;
+        return parseBinary(ADDITIVE);
     }
 
     /**
      * Parses the {@code multiplicative-expression} rule.
      */
     public Ast.Expression parseMultiplicativeExpression() {
-        Ast.Expression leftExpression = parsePrimaryExpression();
-        while (peek(Token.Type.OPERATOR)) {
-            String str = tokens.get(0).toString();
-            str = str.substring(9,10);
-            if ((str.equals("*")) || (str.equals("/")) || (str.equals("^"))) {
-                match(Token.Type.OPERATOR);
-                String operator = tokens.get(-1).getLiteral();
-                Ast.Expression rightExpression = parsePrimaryExpression();
-                leftExpression = new Ast.Expression.Binary(operator,leftExpression,rightExpression);
-            }
-            else {
-                break;
-            }
-        }
-        return leftExpression;
+        return parseBinary(MULTIPLICATIVE);
     }
 
     /**
@@ -710,7 +613,126 @@ public final class Parser {
      * not strictly necessary.
      */
     public Ast.Expression parsePrimaryExpression() throws ParseException {
-        Ast.Expression expr = new Ast.Expression.Literal(null);
+        return parseBinary(PRIMARY);
+    }
+
+    /**
+     * Parses an expression whose top-level operators have at least the given
+     * precedence, by precedence climbing over {@link #OPERATORS}. Each operator
+     * reduces the operators before it which bind at least as tightly, so all
+     * operators are left associative and build the same trees as one method
+     * per precedence level would.
+     *
+     * Rather than recursing, groups, function arguments and list offsets push a
+     * {@link Frame} with its own operators, so deeply nested expressions are
+     * limited by the heap instead of the call stack.
+     */
+    private Ast.Expression parseBinary(int precedence) throws ParseException {
+        frames.clear();
+        int count = 0;
+        // the innermost frame, or null for the expression itself
+        Frame frame = null;
+        while (true) {
+            // an operand, opening a frame for each group, call or offset first
+            Ast.Expression operand = null;
+            while (operand == null) {
+                if (match(Token.Type.OPERATOR, "(")) {
+                    frames.add(frame);
+                    frame = new Frame(Frame.GROUP, null, count);
+                }
+                else if (match(Token.Type.IDENTIFIER)) {
+                    String name = tokens.get(-1).getLiteral();
+                    int symbol = tokens.get(-1).getSymbol();
+                    if (symbol == SymbolTable.NIL) {
+                        operand = new Ast.Expression.Literal(null);
+                    }
+                    else if (symbol == SymbolTable.TRUE) {
+                        operand = new Ast.Expression.Literal(true);
+                    }
+                    else if (symbol == SymbolTable.FALSE) {
+                        operand = new Ast.Expression.Literal(false);
+                    }
+                    else if (tokens.has(1) && match(Token.Type.OPERATOR, "[")) {
+                        if (match("]")) {
+                            operand = new Ast.Expression.Access(Optional.empty(), name);
+                        }
+                        else {
+                            frames.add(frame);
+                            frame = new Frame(Frame.OFFSET, name, count);
+                        }
+                    }
+                    else if (tokens.has(1) && match(Token.Type.OPERATOR, "(")) {
+                        if (match(")")) {
+                            operand = new Ast.Expression.Function(name, new ArrayList<>());
+                        }
+                        else {
+                            frames.add(frame);
+                            frame = new Frame(Frame.CALL, name, count);
+                        }
+                    }
+                    else {
+                        operand = new Ast.Expression.Access(Optional.empty(), name);
+                    }
+                }
+                else {
+                    operand = parseLiteral();
+                }
+            }
+            // then either an operator, or the end of the innermost frame
+            while (true) {
+                int operator = peekOperator();
+                int base = frame == null ? 0 : frame.operators;
+                if (operator >= 0 && PRECEDENCE[operator] >= (frame == null ? precedence : LOGICAL)) {
+                    while (count > base && PRECEDENCE[operators[count - 1]] >= PRECEDENCE[operator]) {
+                        operand = reduce(--count, operand);
+                    }
+                    if (count == operators.length) {
+                        operators = Arrays.copyOf(operators, count * 2);
+                        operands = Arrays.copyOf(operands, count * 2);
+                    }
+                    operators[count] = operator;
+                    operands[count++] = operand;
+                    tokens.advance();
+                    break;
+                }
+                while (count > base) {
+                    operand = reduce(--count, operand);
+                }
+                if (frame == null) {
+                    return operand;
+                }
+                else if (frame.kind == Frame.GROUP) {
+                    if (!match(")")) {
+                        throw new ParseException("Must close open parenthesis with a closed parenthesis", tokens.index);
+                    }
+                    operand = new Ast.Expression.Group(operand);
+                }
+                else if (frame.kind == Frame.CALL) {
+                    frame.arguments.add(operand);
+                    if (match(",")) {
+                        break;
+                    }
+                    if (!match(")")) {
+                        throw new ParseException("Missing closing parenthesis ", tokens.index);
+                    }
+                    operand = new Ast.Expression.Function(frame.name, frame.arguments);
+                }
+                else {
+                    if (!match("]")) {
+                        throw new ParseException("Should be a closed bracket ", tokens.index);
+                    }
+                    operand = new Ast.Expression.Access(Optional.of(operand), frame.name);
+                }
+                frame = frames.remove(frames.size() - 1);
+            }
+        }
+    }
+
+    /**
+     * Parses a literal value. Identifiers, groups and operators are handled by
+     * {@link #parseBinary(int)}.
+     */
+    private Ast.Expression parseLiteral() throws ParseException {
         if (match(Token.Type.INTEGER)) {
             String literal = tokens.get(-1).getLiteral();
             return new Ast.Expression.Literal(new BigInteger(literal));
@@ -743,87 +765,58 @@ public final class Parser {
                 throw new ParseException("Invalid String", tokens.index);
             }
         }
-        else if(match(Token.Type.IDENTIFIER)){
-            String str = tokens.get(-1).getLiteral();
-            if (str.equals("NIL")) {
-                return new Ast.Expression.Literal(null);
-            }
-            else if (str.equals("TRUE")) {
-                return new Ast.Expression.Literal(true);
-            }
-            else if (str.equals("FALSE")) {
-                return new Ast.Expression.Literal(false);
-            }
-            if (tokens.has(1)) {
-                String operator1 = tokens.get(0).toString();
-                operator1 = operator1.substring(9,10);
-                if (operator1.equals("[")) {
-                    match(Token.Type.OPERATOR);
-                    if (tokens.get(0).getLiteral().equals("]")) {
-                        tokens.advance();
-                        return new Ast.Expression.Access(Optional.empty(), str);
-                    }
-                    Ast.Expression expression2 = parseExpression();
-                    String operator2 = tokens.get(0).toString();
-                    operator2 = operator2.substring(9,10);
-                    if (operator2.equals("]")) {
-                        tokens.advance();
-                        Ast.Expression.Access accessExpression = new Ast.Expression.Access(Optional.of(expression2), str);
-                        return accessExpression;
-                    }
-                }
-                else if (operator1.equals("(")) {
-                    match(Token.Type.OPERATOR);
-                    List<Ast.Expression> list = new ArrayList<>();
-                    String operator2 = tokens.get(0).toString();
-                    operator2 = operator2.substring(9,10);
-                    if (operator2.equals(")")) {
-                        tokens.advance();
-                        return new Ast.Expression.Function(str, list);
-                    }
-                    Ast.Expression expression2 = parseExpression();
-                    list.add(expression2);
-                    operator2 = tokens.get(0).toString();
-                    operator2 = operator2.substring(9,10);
-                    while (operator2.equals(",")) {
-                        match(Token.Type.OPERATOR);
-                        Ast.Expression tempExpression = parseExpression();
-                        list.add(tempExpression);
-                        operator2 = tokens.get(0).toString();
-                        operator2 = operator2.substring(9,10);
-                    }
-                    if (operator2.equals(")")) {
-                        tokens.advance();
-                        Ast.Expression.Function function = new Ast.Expression.Function(str, list);
-                        return function;
-                    }
-                }
-            }
-            return new Ast.Expression.Access(Optional.empty(), str);
-        }
-        else if (match(Token.Type.OPERATOR)) {
-            String operator = tokens.get(-1).getLiteral();
-            if (operator.equals("(")) {
-                String str = tokens.get(0).getLiteral();
-                Ast.Expression expression = parseExpression();
-                if (match(Token.Type.OPERATOR)) {
-                    operator = tokens.get(-1).getLiteral();
-                    if (operator.equals(")")) {
-                        Ast.Expression.Group group = new Ast.Expression.Group(expression);
-                        return group;
-                    }
-                    else {
-                        throw new ParseException("Must close open parenthesis with a closed parenthesis", tokens.index);
-                    }
-                }
-                else {
-                    throw new ParseException("Must close open parenthesis with a closed parenthesis", tokens.index);
-                }
-            }
-        }
         throw new ParseException("Invalid primary expression", tokens.index);
     }
 
+    /**
+     * Returns the index in {@link #OPERATORS} of the next token, or -1 if it
+     * is not a binary operator.
+     */
+    private int peekOperator() {
+        if (!peek(Token.Type.OPERATOR)) {
+            return -1;
+        }
+        Token token = tokens.get(0);
+        char first = token.charAt(0);
+        int operator = first < OPERATOR_INDEX.length ? OPERATOR_INDEX[first] : -1;
+        return operator >= 0 && token.hasLiteral(OPERATORS[operator]) ? operator : -1;
+    }
+
+    /**
+     * Applies the operator at the given position of the stack to its left
+     * operand and the given right operand, clearing the position.
+     */
+    private Ast.Expression reduce(int position, Ast.Expression right) {
+        Ast.Expression left = operands[position];
+        operands[position] = null;
+        return new Ast.Expression.Binary(OPERATORS[operators[position]], left, right);
+    }
+
+    /**
+     * Returns the index of the next token, which is the number of tokens
+     * consumed so far. Used by {@link IncrementalParser} to find the tokens
+     * a declaration it parsed again ends at.
+     */
+    int position() {
+        return tokens.index;
+    }
+
+    /**
+     * Returns {@code true} if the next token is the given keyword, comparing
+     * the symbol id assigned by the lexer instead of the literal.
+     */
+    private boolean peekKeyword(int symbol) {
+        return tokens.has(0) && tokens.get(0).getSymbol() == symbol;
+    }
+
+    private boolean peekBlockEnd() {
+        return peekKeyword(SymbolTable.END) || peekKeyword(SymbolTable.ELSE) || peekKeyword(SymbolTable.CASE) || peekKeyword(SymbolTable.DEFAULT);
+    }
+
+    private boolean peekGlobal() {
+        return peekKeyword(SymbolTable.LIST) || peekKeyword(SymbolTable.VAR) || peekKeyword(SymbolTable.VAL);
+    }
+
     /**
      * As in the lexer, returns {@code true} if the current sequence of tokens
      * matches the given patterns. Unlike the lexer, the pattern is not a regex;
@@ -833,6 +826,9 @@ public final class Parser {
      *
      * In other words, {@code Token(IDENTIFIER, "literal")} is matched by both
      * {@code peek(Token.Type.IDENTIFIER)} and {@code peek("literal")}.
+     *
+     * The parse methods use the single token overloads below, which avoid the
+     * varargs array and instanceof checks.
      */
     private boolean peek(Object... patterns) {
         for (int i = 0; i < patterns.length; i++) {
@@ -845,7 +841,7 @@ public final class Parser {
                 }
             }
             else if (patterns[i] instanceof String) {
-                if (!patterns.equals(tokens.get(i).getLiteral())) {
+                if (!tokens.get(i).hasLiteral((String) patterns[i])) {
                     return false;
                 }
             }
@@ -870,12 +866,134 @@ public final class Parser {
         return peek;
     }
 
+    /**
+     * Returns {@code true} if the next token has the given type.
+     */
+    private boolean peek(Token.Type type) {
+        return tokens.has(0) && tokens.get(0).getType() == type;
+    }
+
+    /**
+     * Returns {@code true} if the next token has the given literal, which is
+     * compared without materializing the token's literal.
+     */
+    private boolean peek(String literal) {
+        return tokens.has(0) && tokens.get(0).hasLiteral(literal);
+    }
+
+    /**
+     * Returns {@code true} if the next token has both the given type and
+     * literal.
+     */
+    private boolean peek(Token.Type type, String literal) {
+        return peek(type) && tokens.get(0).hasLiteral(literal);
+    }
+
+    private boolean match(Token.Type type) {
+        boolean peek = peek(type);
+        if (peek) {
+            tokens.advance();
+        }
+        return peek;
+    }
+
+    private boolean match(String literal) {
+        boolean peek = peek(literal);
+        if (peek) {
+            tokens.advance();
+        }
+        return peek;
+    }
+
+    private boolean match(Token.Type type, String literal) {
+        boolean peek = peek(type, literal);
+        if (peek) {
+            tokens.advance();
+        }
+        return peek;
+    }
+
+    /**
+     * The source and errors from {@link #parseRecovering()}.
+     */
+    /**
+     * Receives the tokens {@code [first, end)} each top level declaration
+     * was parsed from, including the semi-colon which may follow it. The
+     * globals are numbered first, then the functions.
+     */
+    interface DeclarationListener {
+
+        void parsed(int declaration, int first, int end);
+
+    }
+
+    public static final class Result {
+
+        private final Ast.Source source;
+        private final List<ParseException> errors;
+
+        public Result(Ast.Source source, List<ParseException> errors) {
+            this.source = source;
+            this.errors = errors;
+        }
+
+        public Ast.Source getSource() {
+            return source;
+        }
+
+        public List<ParseException> getErrors() {
+            return errors;
+        }
+
+        public boolean hasErrors() {
+            return !errors.isEmpty();
+        }
+
+    }
+
+    /**
+     * A group, function argument or list offset nested in an expression being
+     * parsed by {@link #parseBinary(int)}. Its operators are those above
+     * {@link #operators} on the operator stack, and may have any precedence.
+     */
+    private static final class Frame {
+
+        private static final int GROUP = 0;
+        private static final int CALL = 1;
+        private static final int OFFSET = 2;
+
+        private final int kind;
+        private final String name;
+        private final int operators;
+        private final List<Ast.Expression> arguments;
+
+        private Frame(int kind, String name, int operators) {
+            this.kind = kind;
+            this.name = name;
+            this.operators = operators;
+            this.arguments = kind == CALL ? new ArrayList<>() : null;
+        }
+
+    }
+
+    /**
+     * The parser's view of the tokens, read one at a time from an iterator
+     * into a ring buffer. The buffer holds the previous token, the current
+     * token and two tokens of lookahead, which is all the parse methods use,
+     * so tokens don't have to be held in a list for the parser.
+     */
     private static final class TokenStream {
 
-        private final List<Token> tokens;
+        private static final int LOOKBEHIND = 1;
+        private static final int LOOKAHEAD = 2;
+        private static final int SIZE = 4;
+
+        private final Iterator<Token> tokens;
+        private final Token[] buffer = new Token[SIZE];
+        private int read = 0;
         private int index = 0;
 
-        private TokenStream(List<Token> tokens) {
+        private TokenStream(Iterator<Token> tokens) {
             this.tokens = tokens;
         }
 
@@ -883,14 +1001,26 @@ public final class Parser {
          * Returns true if there is a token at index + offset.
          */
         public boolean has(int offset) {
-            return index + offset < tokens.size();
+            int position = checkOffset(offset);
+            if (position < read) {
+                return true;
+            }
+            while (read <= position && tokens.hasNext()) {
+                buffer[read & (SIZE - 1)] = tokens.next();
+                read++;
+            }
+            return position < read;
         }
 
         /**
          * Gets the token at index + offset.
          */
         public Token get(int offset) {
-            return tokens.get(index + offset);
+            int position = checkOffset(offset);
+            if (position >= read && !has(offset)) {
+                throw new IndexOutOfBoundsException("Index: " + position + ", Size: " + read);
+            }
+            return buffer[position & (SIZE - 1)];
         }
 
         /**
@@ -900,6 +1030,13 @@ public final class Parser {
             index++;
         }
 
+        private int checkOffset(int offset) {
+            if (offset < -LOOKBEHIND || offset > LOOKAHEAD || index + offset < 0) {
+                throw new IndexOutOfBoundsException("Offset " + offset + " is outside of the token window.");
+            }
+            return index + offset;
+        }
+
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,66 @@
+package plc.project;
+
+/**
+ * A source compiled once and then run any number of times, including from
+ * many threads at once. The program only holds what never changes: the
+ * source, its compiled globals and functions, and a library scope which is
+ * shared by every run and only read. Each run gets its own scope for the
+ * globals, whose parent is the library, and its own frames for the
+ * variables of the functions it calls, so runs can't see each other.
+ *
+ * The library, and any scope above it, must never be changed once the
+ * program is created. A {@link Scope} keeps its variables and functions in
+ * plain {@code HashMap}s, which are only safe to share because runs read
+ * them and nothing writes them, so defining anything in the library while a
+ * run may be looking it up is a data race. Build a library completely, as
+ * {@link #standardLibrary()} does, before passing it in. Its functions must
+ * also be safe to call from several threads, as the builtins are.
+ */
+public final class Program {
+
+    private final Ast.Source source;
+    private final Scope library;
+    private final Compiler.Code code;
+
+    public Program(Ast.Source source) {
+        this(source, standardLibrary());
+    }
+
+    public Program(Ast.Source source, Scope library) {
+        this.source = source;
+        this.library = library;
+        this.code = Compiler.compile(source);
+    }
+
+    /**
+     * Returns a new scope holding the builtin functions which the
+     * {@link Interpreter} defines.
+     */
+    public static Scope standardLibrary() {
+        Scope library = new Scope(null);
+        Interpreter.defineBuiltins(library);
+        return library;
+    }
+
+    public Ast.Source getSource() {
+        return source;
+    }
+
+    /**
+     * Runs the program with fresh globals and returns the result of
+     * {@code main/0}.
+     */
+    public Environment.PlcObject run() {
+        return code.execute(new Scope(library));
+    }
+
+    /**
+     * Runs the program as {@link #run()} does, charging it to a meter which
+     * aborts it with a {@link Budget.Aborted} once its budget runs out or it
+     * is cancelled.
+     */
+    public Environment.PlcObject run(Budget.Meter meter) {
+        return code.execute(new Scope(library), meter);
+    }
+
+}
@@ -0,0 +1,181 @@
+package plc.project;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs many scripts concurrently on a pool of worker threads. Each source is
+ * lexed, parsed and compiled into a {@link Program} once, which is cached and
+ * shared by every later run of the same source, so a run only creates its
+ * own globals and frames. Results are delivered through futures.
+ *
+ * Every run is charged to its own meter of the service's {@link Budget},
+ * and fails with a {@link Budget.Aborted} if it runs out. A run which takes
+ * longer than the timeout fails with a {@link TimeoutException} and is
+ * cancelled, which the script notices on its next few loop iterations or
+ * calls, so a runaway script frees its worker soon after.
+ */
+public final class ScriptService implements AutoCloseable {
+
+    /**
+     * The most programs which are cached by default; sources seen after that
+     * are still run, but compiled each time.
+     */
+    private static final int CACHE_SIZE = 4096;
+
+    private final Map<String, Program> programs = new ConcurrentHashMap<>();
+    private final Scope library = Program.standardLibrary();
+    private final ExecutorService workers;
+    private final ScheduledExecutorService timer;
+    private final Duration timeout;
+    private final Budget budget;
+    private final int cacheSize;
+
+    /**
+     * Creates a service with one worker per processor, as scripts are bound
+     * by the processor rather than waiting on anything.
+     */
+    public ScriptService(Duration timeout) {
+        this(Runtime.getRuntime().availableProcessors(), timeout);
+    }
+
+    public ScriptService(int threads, Duration timeout) {
+        this(threads, timeout, Budget.UNLIMITED);
+    }
+
+    public ScriptService(int threads, Duration timeout, Budget budget) {
+        this(threads, timeout, budget, CACHE_SIZE);
+    }
+
+    ScriptService(int threads, Duration timeout, Budget budget, int cacheSize) {
+        this.workers = Executors.newFixedThreadPool(threads, daemons("plc-worker"));
+        this.timer = Executors.newSingleThreadScheduledExecutor(daemons("plc-timer"));
+        this.timeout = timeout;
+        this.budget = budget;
+        this.cacheSize = cacheSize;
+    }
+
+    /**
+     * Runs a source, returning a future which completes with the result of
+     * its {@code main/0}, or exceptionally if it doesn't lex, parse or run.
+     */
+    public CompletableFuture<Environment.PlcObject> submit(String source) {
+        Program program = programs.get(source);
+        // compile on a worker rather than on the caller's thread
+        return program != null ? submit(program) : execute(() -> load(source).run(budget.start()));
+    }
+
+    /**
+     * Runs a program which has already been compiled.
+     */
+    public CompletableFuture<Environment.PlcObject> submit(Program program) {
+        return execute(() -> program.run(budget.start()));
+    }
+
+    /**
+     * Returns the program for a source, compiling and caching it if it
+     * hasn't been seen. Sources which don't lex or parse aren't cached.
+     */
+    public Program load(String source) throws ParseException {
+        Program program = programs.get(source);
+        if (program == null) {
+            program = new Program(new Parser(new Lexer(source).lex()).parseSource(), library);
+            if (programs.size() < cacheSize) {
+                // another thread may have compiled it first, and its program
+                // is just as good
+                Program cached = programs.putIfAbsent(source, program);
+                if (cached != null) {
+                    program = cached;
+                }
+            }
+        }
+        return program;
+    }
+
+    /**
+     * Stops accepting scripts, letting those already submitted finish.
+     */
+    @Override
+    public void close() {
+        workers.shutdown();
+        timer.shutdown();
+    }
+
+    private CompletableFuture<Environment.PlcObject> execute(Callable<Environment.PlcObject> script) {
+        Task task = new Task(script);
+        workers.execute(task);
+        return task.result;
+    }
+
+    private static ThreadFactory daemons(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * A submitted script, which completes its result when it finishes, or
+     * when it times out. Cancelling the result cancels the script.
+     */
+    private final class Task extends FutureTask<Environment.PlcObject> {
+
+        private final CompletableFuture<Environment.PlcObject> result = new CompletableFuture<>();
+
+        private Task(Callable<Environment.PlcObject> script) {
+            super(script);
+            result.whenComplete((value, error) -> {
+                if (result.isCancelled()) {
+                    cancel(true);
+                }
+            });
+        }
+
+        @Override
+        public void run() {
+            // the timeout starts when the script does, rather than when it
+            // was queued
+            ScheduledFuture<?> deadline = timer.schedule(this::expire, timeout.toNanos(), TimeUnit.NANOSECONDS);
+            try {
+                super.run();
+            } finally {
+                deadline.cancel(false);
+            }
+        }
+
+        private void expire() {
+            if (result.completeExceptionally(new TimeoutException("The script did not finish within " + timeout.toMillis() + "ms."))) {
+                cancel(true);
+            }
+        }
+
+        @Override
+        protected void done() {
+            try {
+                result.complete(get());
+            } catch (ExecutionException e) {
+                result.completeExceptionally(e.getCause());
+            } catch (CancellationException | InterruptedException e) {
+                // the result was already cancelled or timed out
+            }
+        }
+
+    }
+
+}
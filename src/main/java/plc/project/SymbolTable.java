@@ -0,0 +1,161 @@
+package plc.project;
+
+import java.util.Arrays;
+
+/**
+ * Interns identifier names into small integer symbol ids. The lexer fills a
+ * table as it emits {@link Token.Type#IDENTIFIER} tokens, so identical names
+ * share one {@link String} instance and can be compared by id or reference.
+ *
+ * Keywords are registered first in every table and always have the ids given
+ * by the constants below, which lets the parser dispatch on ints instead of
+ * comparing literals. A table is not thread-safe.
+ */
+public final class SymbolTable {
+
+    public static final int NONE = -1;
+
+    public static final int LIST = 0;
+    public static final int VAR = 1;
+    public static final int VAL = 2;
+    public static final int FUN = 3;
+    public static final int DO = 4;
+    public static final int END = 5;
+    public static final int LET = 6;
+    public static final int SWITCH = 7;
+    public static final int CASE = 8;
+    public static final int DEFAULT = 9;
+    public static final int IF = 10;
+    public static final int ELSE = 11;
+    public static final int WHILE = 12;
+    public static final int RETURN = 13;
+    public static final int NIL = 14;
+    public static final int TRUE = 15;
+    public static final int FALSE = 16;
+
+    private static final String[] KEYWORDS = {
+            "LIST", "VAR", "VAL", "FUN", "DO", "END", "LET", "SWITCH", "CASE",
+            "DEFAULT", "IF", "ELSE", "WHILE", "RETURN", "NIL", "TRUE", "FALSE"
+    };
+
+    private static final SymbolTable KEYWORD_TABLE = new SymbolTable();
+
+    private String[] names = new String[64];
+    private int[] hashes = new int[64];
+    private int[] slots = new int[128];
+    private int size = 0;
+
+    public SymbolTable() {
+        Arrays.fill(slots, NONE);
+        for (String keyword : KEYWORDS) {
+            intern(keyword);
+        }
+    }
+
+    /**
+     * Returns the keyword id of the given name, or {@link #NONE} if it is not
+     * a keyword.
+     */
+    public static int keyword(CharSequence name) {
+        return KEYWORD_TABLE.lookup(name, 0, name.length());
+    }
+
+    public static boolean isKeyword(int symbol) {
+        return symbol >= 0 && symbol < KEYWORDS.length;
+    }
+
+    public int intern(String name) {
+        return intern(name, 0, name.length());
+    }
+
+    /**
+     * Returns the symbol id of the characters {@code text[start, start +
+     * length)}, registering them as a new symbol if they have not been seen.
+     * A string is only created for names which are new to the table.
+     */
+    public int intern(CharSequence text, int start, int length) {
+        int hash = hash(text, start, length);
+        int slot = find(text, start, length, hash);
+        if (slots[slot] != NONE) {
+            return slots[slot];
+        }
+        int symbol = size++;
+        if (symbol == names.length) {
+            names = Arrays.copyOf(names, symbol * 2);
+            hashes = Arrays.copyOf(hashes, symbol * 2);
+        }
+        names[symbol] = text.subSequence(start, start + length).toString();
+        hashes[symbol] = hash;
+        slots[slot] = symbol;
+        if (size * 2 > slots.length) {
+            rehash();
+        }
+        return symbol;
+    }
+
+    /**
+     * Returns the symbol id of the given characters, or {@link #NONE} if they
+     * have not been interned.
+     */
+    public int lookup(CharSequence text, int start, int length) {
+        return slots[find(text, start, length, hash(text, start, length))];
+    }
+
+    public String getName(int symbol) {
+        if (symbol < 0 || symbol >= size) {
+            throw new IndexOutOfBoundsException("Unknown symbol " + symbol + ".");
+        }
+        return names[symbol];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private int find(CharSequence text, int start, int length, int hash) {
+        int mask = slots.length - 1;
+        int slot = hash & mask;
+        while (slots[slot] != NONE) {
+            int symbol = slots[slot];
+            if (hashes[symbol] == hash && matches(names[symbol], text, start, length)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void rehash() {
+        slots = new int[slots.length * 2];
+        Arrays.fill(slots, NONE);
+        int mask = slots.length - 1;
+        for (int symbol = 0; symbol < size; symbol++) {
+            int slot = hashes[symbol] & mask;
+            while (slots[slot] != NONE) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = symbol;
+        }
+    }
+
+    private static int hash(CharSequence text, int start, int length) {
+        int hash = 0;
+        for (int i = start; i < start + length; i++) {
+            hash = 31 * hash + text.charAt(i);
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean matches(String name, CharSequence text, int start, int length) {
+        if (name.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (name.charAt(i) != text.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
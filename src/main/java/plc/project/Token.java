@@ -1,5 +1,7 @@
 package plc.project;
 
+import java.nio.CharBuffer;
+
 public final class Token {
 
     public enum Type {
@@ -8,17 +10,42 @@ public final class Token {
         DECIMAL,
         CHARACTER,
         STRING,
-        OPERATOR
+        OPERATOR,
+        ERROR
     }
 
+    /**
+     * Marks a symbol which has not been looked up yet.
+     */
+    static final int UNRESOLVED = -2;
+
     private final Type type;
-    private final String literal;
+    private final CharSequence source;
+    private String literal;
     private final int index;
+    private final int length;
+    private int symbol;
 
     public Token(Type type, String literal, int index) {
+        this(type, null, literal, index, literal.length(), UNRESOLVED);
+    }
+
+    /**
+     * Creates a token over {@code source} from {@code index} to {@code index +
+     * length}. The literal is not copied out of the source until {@link
+     * #getLiteral()} is first called.
+     */
+    public Token(Type type, CharSequence source, int index, int length) {
+        this(type, source, null, index, length, UNRESOLVED);
+    }
+
+    Token(Type type, CharSequence source, String literal, int index, int length, int symbol) {
         this.type = type;
+        this.source = source;
         this.literal = literal;
         this.index = index;
+        this.length = length;
+        this.symbol = symbol;
     }
 
     public Type getType() {
@@ -26,24 +53,88 @@ public final class Token {
     }
 
     public String getLiteral() {
+        if (literal == null) {
+            literal = source.subSequence(index, index + length).toString();
+        }
         return literal;
     }
 
+    /**
+     * Returns the text of the token as a view of the source when the literal
+     * has not been materialized, avoiding a copy.
+     */
+    public CharSequence getText() {
+        if (literal != null) {
+            return literal;
+        }
+        return CharBuffer.wrap(source, index, index + length);
+    }
+
+    /**
+     * Returns true if the token's text is the given literal. The characters
+     * are compared in place, so the literal is not materialized.
+     */
+    public boolean hasLiteral(String literal) {
+        if (this.literal != null) {
+            return this.literal.equals(literal);
+        }
+        if (length != literal.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (source.charAt(index + i) != literal.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the character at the given index of the token's text, without
+     * materializing the literal.
+     */
+    public char charAt(int i) {
+        if (literal != null) {
+            return literal.charAt(i);
+        }
+        if (i < 0 || i >= length) {
+            throw new IndexOutOfBoundsException("Index: " + i + ", Length: " + length);
+        }
+        return source.charAt(index + i);
+    }
+
     public int getIndex() {
         return index;
     }
 
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Returns the symbol id of an identifier as assigned by the lexer's {@link
+     * SymbolTable}. Keywords always have their fixed ids, while tokens which
+     * were not interned by a lexer only resolve keywords and otherwise return
+     * {@link SymbolTable#NONE}, as do all non-identifier tokens.
+     */
+    public int getSymbol() {
+        if (symbol == UNRESOLVED) {
+            symbol = type == Type.IDENTIFIER ? SymbolTable.keyword(getText()) : SymbolTable.NONE;
+        }
+        return symbol;
+    }
+
     @Override
     public boolean equals(Object obj) {
         return obj instanceof Token
                 && type == ((Token) obj).type
-                && literal.equals(((Token) obj).literal)
+                && getLiteral().equals(((Token) obj).getLiteral())
                 && index == ((Token) obj).index;
     }
 
     @Override
     public String toString() {
-        return type + "=" + literal + "@" + index;
+        return type + "=" + getLiteral() + "@" + index;
     }
 
 }
@@ -0,0 +1,178 @@
+package plc.project;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * A compact list of tokens stored as parallel arrays of type, start index and
+ * length into the source, as produced by {@link Lexer#lexCompact()}. Nothing
+ * is copied out of the source while lexing; {@link #get(int)} creates a
+ * {@link Token} view on demand whose literal is materialized only when {@link
+ * Token#getLiteral()} is called, so the buffer can be passed anywhere a
+ * {@code List<Token>} is expected.
+ */
+public final class TokenBuffer extends AbstractList<Token> implements RandomAccess {
+
+    private static final Token.Type[] TYPES = Token.Type.values();
+
+    private CharSequence source;
+    private byte[] types = new byte[16];
+    private int[] starts = new int[16];
+    private int[] lengths = new int[16];
+    private int[] symbols = new int[16];
+    private int size = 0;
+
+    public TokenBuffer(CharSequence source) {
+        this.source = source;
+    }
+
+    public CharSequence getSource() {
+        return source;
+    }
+
+    public void add(Token.Type type, int start, int length) {
+        add(type, start, length, Token.UNRESOLVED);
+    }
+
+    /**
+     * Adds a token with the symbol id assigned to it by the lexer's {@link
+     * SymbolTable}.
+     */
+    public void add(Token.Type type, int start, int length, int symbol) {
+        if (size == types.length) {
+            grow(size * 2);
+        }
+        types[size] = (byte) type.ordinal();
+        starts[size] = start;
+        lengths[size] = length;
+        symbols[size] = symbol;
+        size++;
+        modCount++;
+    }
+
+    /**
+     * Replaces the tokens in {@code [from, to)} with the replacement tokens and
+     * moves the tokens after them by {@code delta} characters, for a source
+     * which has been edited into the given one. Used by {@link
+     * IncrementalLexer}; the shift only touches the start array, so it is
+     * cheap even for large files.
+     */
+    void splice(int from, int to, TokenBuffer replacement, int delta, CharSequence source) {
+        int tail = size - to;
+        int moved = from + replacement.size;
+        if (moved + tail > types.length) {
+            grow(Math.max(moved + tail, types.length * 2));
+        }
+        System.arraycopy(types, to, types, moved, tail);
+        System.arraycopy(starts, to, starts, moved, tail);
+        System.arraycopy(lengths, to, lengths, moved, tail);
+        System.arraycopy(symbols, to, symbols, moved, tail);
+        for (int i = moved; i < moved + tail; i++) {
+            starts[i] += delta;
+        }
+        System.arraycopy(replacement.types, 0, types, from, replacement.size);
+        System.arraycopy(replacement.starts, 0, starts, from, replacement.size);
+        System.arraycopy(replacement.lengths, 0, lengths, from, replacement.size);
+        System.arraycopy(replacement.symbols, 0, symbols, from, replacement.size);
+        this.size = moved + tail;
+        this.source = source;
+        modCount++;
+    }
+
+    /**
+     * Writes the types, starts and lengths of the tokens for {@link AstCache}.
+     * Symbol ids belong to the lexer's table and aren't written.
+     */
+    void write(DataOutputStream out) throws IOException {
+        out.writeInt(size);
+        out.write(types, 0, size);
+        for (int i = 0; i < size; i++) {
+            out.writeInt(starts[i]);
+        }
+        for (int i = 0; i < size; i++) {
+            out.writeInt(lengths[i]);
+        }
+    }
+
+    /**
+     * Reads tokens written by {@link #write(DataOutputStream)} from the
+     * buffer's position, as tokens of the given source. Throws an {@code
+     * IllegalArgumentException} if a token has an unknown type or lies
+     * outside of the source.
+     */
+    static TokenBuffer read(ByteBuffer buffer, CharSequence source) {
+        TokenBuffer tokens = new TokenBuffer(source);
+        // a type byte, a start and a length for each token
+        int size = AstArena.length(buffer, 9);
+        tokens.grow(Math.max(size, 16));
+        buffer.get(tokens.types, 0, size);
+        buffer.asIntBuffer().get(tokens.starts, 0, size);
+        buffer.position(buffer.position() + 4 * size);
+        buffer.asIntBuffer().get(tokens.lengths, 0, size);
+        buffer.position(buffer.position() + 4 * size);
+        for (int i = 0; i < size; i++) {
+            int start = tokens.starts[i];
+            int length = tokens.lengths[i];
+            if (tokens.types[i] < 0 || tokens.types[i] >= TYPES.length
+                    || start < 0 || length < 0 || start > source.length() - length) {
+                throw new IllegalArgumentException("Malformed token " + i + ".");
+            }
+        }
+        Arrays.fill(tokens.symbols, 0, size, Token.UNRESOLVED);
+        tokens.size = size;
+        return tokens;
+    }
+
+    public Token.Type getType(int i) {
+        return TYPES[types[checkIndex(i)]];
+    }
+
+    public int getStart(int i) {
+        return starts[checkIndex(i)];
+    }
+
+    public int getLength(int i) {
+        return lengths[checkIndex(i)];
+    }
+
+    public int getSymbol(int i) {
+        return get(i).getSymbol();
+    }
+
+    /**
+     * Returns the text of the token as a view of the source, without copying.
+     */
+    public CharSequence getText(int i) {
+        return get(i).getText();
+    }
+
+    @Override
+    public Token get(int i) {
+        checkIndex(i);
+        return new Token(TYPES[types[i]], source, null, starts[i], lengths[i], symbols[i]);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    private void grow(int capacity) {
+        types = Arrays.copyOf(types, capacity);
+        starts = Arrays.copyOf(starts, capacity);
+        lengths = Arrays.copyOf(lengths, capacity);
+        symbols = Arrays.copyOf(symbols, capacity);
+    }
+
+    private int checkIndex(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+        }
+        return i;
+    }
+
+}
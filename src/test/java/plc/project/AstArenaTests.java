@@ -0,0 +1,60 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * Tests that every AST expected by the {@link ParserTests} is the same after
+ * being flattened into an {@link AstArena} and materialized again, and after
+ * the arena is written and read back as {@link AstCache} does. Statements and
+ * expressions are wrapped in a function of their own.
+ */
+final class AstArenaTests {
+
+    @ParameterizedTest
+    @MethodSource({
+            "plc.project.ParserTests#testSource",
+            "plc.project.ParserTests#testProgram",
+            "plc.project.ParserTests#testExpressionStatement",
+            "plc.project.ParserTests#testDeclarationStatement",
+            "plc.project.ParserTests#testAssignmentStatement",
+            "plc.project.ParserTests#testIfStatement",
+            "plc.project.ParserTests#testWhileStatement",
+            "plc.project.ParserTests#testReturnStatement",
+            "plc.project.ParserTests#testLiteralExpression",
+            "plc.project.ParserTests#testGroupExpression",
+            "plc.project.ParserTests#testBinaryExpression",
+            "plc.project.ParserTests#testAccessExpression",
+            "plc.project.ParserTests#testFunctionExpression"
+    })
+    void testRoundTrip(String test, Object input, Ast expected) throws IOException {
+        Ast.Source source = source(expected);
+        AstArena arena = AstArena.of(source);
+        Assertions.assertEquals(source, arena.getSource());
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        arena.write(new DataOutputStream(bytes));
+        AstArena read = AstArena.read(ByteBuffer.wrap(bytes.toByteArray()));
+        Assertions.assertEquals(arena.getNodeCount(), read.getNodeCount());
+        Assertions.assertEquals(source, read.getSource());
+    }
+
+    private static Ast.Source source(Ast ast) {
+        if (ast instanceof Ast.Source) {
+            return (Ast.Source) ast;
+        }
+        Ast.Statement statement = ast instanceof Ast.Statement ? (Ast.Statement) ast : new Ast.Statement.Expression((Ast.Expression) ast);
+        return new Ast.Source(Arrays.asList(), Arrays.asList(
+                new Ast.Function("main", Arrays.asList(), Arrays.asList(), Optional.empty(), Arrays.asList(statement))
+        ));
+    }
+
+}
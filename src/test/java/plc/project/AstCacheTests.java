@@ -0,0 +1,128 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Tests that {@link AstCache} entries are reused, and that an entry which
+ * can't be read is parsed again and replaced rather than failing the load.
+ */
+final class AstCacheTests {
+
+    private static final String SOURCE = "VAR x: Integer = 1; FUN main(): Integer DO RETURN x + 2; END";
+
+    // the header is the magic number, version and source length
+    private static final int TOKENS = 12;
+
+    @Test
+    void testCached() throws IOException {
+        Path directory = Files.createTempDirectory("ast-cache");
+        try {
+            AstCache cache = new AstCache(directory);
+            AstCache.Entry first = cache.load(SOURCE);
+            AstCache.Entry second = cache.load(SOURCE);
+            Assertions.assertFalse(first.isCached());
+            Assertions.assertTrue(second.isCached());
+            Assertions.assertEquals(parse(), second.getAst());
+            Assertions.assertEquals(new Lexer(SOURCE).lex(), second.getTokens());
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testCorrupted(String test, Consumer<ByteBuffer> corruption) throws IOException {
+        Path directory = Files.createTempDirectory("ast-cache");
+        try {
+            AstCache cache = new AstCache(directory);
+            cache.load(SOURCE);
+            Path entry = entry(directory);
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(entry));
+            corruption.accept(buffer);
+            Files.write(entry, Arrays.copyOf(buffer.array(), buffer.limit()));
+
+            AstCache.Entry reparsed = cache.load(SOURCE);
+            Assertions.assertFalse(reparsed.isCached());
+            Assertions.assertEquals(parse(), reparsed.getAst());
+            // the entry was replaced with a readable one
+            Assertions.assertTrue(cache.load(SOURCE).isCached());
+        } finally {
+            delete(directory);
+        }
+    }
+
+    private static Stream<Arguments> testCorrupted() {
+        return Stream.of(
+                Arguments.of("Truncated", (Consumer<ByteBuffer>) buffer -> buffer.limit(buffer.limit() / 2)),
+                Arguments.of("Negative Token Count", (Consumer<ByteBuffer>) buffer -> buffer.putInt(TOKENS, -1)),
+                Arguments.of("Huge Token Count", (Consumer<ByteBuffer>) buffer -> buffer.putInt(TOKENS, Integer.MAX_VALUE)),
+                Arguments.of("Token Type", (Consumer<ByteBuffer>) buffer -> buffer.put(TOKENS + 4, (byte) 100)),
+                Arguments.of("Token Start", (Consumer<ByteBuffer>) buffer -> buffer.putInt(TOKENS + 4 + tokens(buffer), SOURCE.length())),
+                Arguments.of("Negative Arena Size", (Consumer<ByteBuffer>) buffer -> buffer.putInt(arena(buffer) + 8, -5)),
+                Arguments.of("Huge Arena Size", (Consumer<ByteBuffer>) buffer -> buffer.putInt(arena(buffer) + 8, Integer.MAX_VALUE)),
+                Arguments.of("Node Kind", (Consumer<ByteBuffer>) buffer -> buffer.putInt(arena(buffer) + 12, 99)),
+                Arguments.of("Child Offset", (Consumer<ByteBuffer>) buffer -> buffer.putInt(literals(buffer) - 4, 1 << 20)),
+                // the return's value, the last int before the function node
+                // at 23, is made the global node at 3
+                Arguments.of("Child Kind", (Consumer<ByteBuffer>) buffer -> buffer.putInt(node(buffer, 22), 3)),
+                // the function is made the literal node at 0
+                Arguments.of("Function Kind", (Consumer<ByteBuffer>) buffer -> buffer.putInt(literals(buffer) - 4, 0)),
+                Arguments.of("Root", (Consumer<ByteBuffer>) buffer -> buffer.putInt(arena(buffer), 0)),
+                Arguments.of("Negative String Length", (Consumer<ByteBuffer>) buffer -> buffer.putInt(literals(buffer) + 5, -1)),
+                Arguments.of("Huge String Length", (Consumer<ByteBuffer>) buffer -> buffer.putInt(literals(buffer) + 5, Integer.MAX_VALUE)),
+                Arguments.of("Literal Tag", (Consumer<ByteBuffer>) buffer -> buffer.put(literals(buffer) + 4, (byte) 42))
+        );
+    }
+
+    private static int tokens(ByteBuffer buffer) {
+        return buffer.getInt(TOKENS);
+    }
+
+    // the offset of the arena's root, after the token types, starts and
+    // lengths
+    private static int arena(ByteBuffer buffer) {
+        return TOKENS + 4 + 9 * tokens(buffer);
+    }
+
+    // the offset of the int at the given index of the arena's nodes
+    private static int node(ByteBuffer buffer, int index) {
+        return arena(buffer) + 12 + 4 * index;
+    }
+
+    // the offset of the literal count, after the arena's nodes
+    private static int literals(ByteBuffer buffer) {
+        return node(buffer, buffer.getInt(arena(buffer) + 8));
+    }
+
+    private static Ast.Source parse() {
+        return new Parser(new Lexer(SOURCE).lex()).parseSource();
+    }
+
+    private static Path entry(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.toString().endsWith(".ast")).findFirst().orElseThrow();
+        }
+    }
+
+    private static void delete(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,99 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Tests the cached structural hash of {@link Ast} nodes and the {@link
+ * AstInterner} which relies on it.
+ */
+final class AstTests {
+
+    @Test
+    void testInternEqual() {
+        // FUN main() DO x = (a + b) * 2; y = (a + b) * 2; f(a + b, 2); END
+        List<Ast.Statement> statements = intern("FUN main() DO x = (a + b) * 2; y = (a + b) * 2; f(a + b, 2); END");
+        Ast.Expression first = value(statements.get(0));
+        Ast.Expression second = value(statements.get(1));
+        Assertions.assertSame(first, second);
+        Ast.Expression.Function call = (Ast.Expression.Function) ((Ast.Statement.Expression) statements.get(2)).getExpression();
+        Ast.Expression.Group group = (Ast.Expression.Group) ((Ast.Expression.Binary) first).getLeft();
+        // a subexpression is shared wherever it appears
+        Assertions.assertSame(group.getExpression(), call.getArguments().get(0));
+        Assertions.assertSame(((Ast.Expression.Binary) first).getRight(), call.getArguments().get(1));
+    }
+
+    @Test
+    void testInternDifferent() {
+        // FUN main() DO x = a + b; x = a - b; x = b + a; x = 1; x = 1.0; x = 'a'; x = "a"; x = a; x = a[0]; END
+        List<Ast.Statement> statements = intern("FUN main() DO x = a + b; x = a - b; x = b + a; x = 1; x = 1.0; x = 'a'; x = \"a\"; x = a; x = a[0]; END");
+        for (int i = 0; i < statements.size(); i++) {
+            for (int j = i + 1; j < statements.size(); j++) {
+                Assertions.assertNotSame(value(statements.get(i)), value(statements.get(j)), i + " and " + j + ".");
+                Assertions.assertNotEquals(value(statements.get(i)), value(statements.get(j)), i + " and " + j + ".");
+            }
+        }
+    }
+
+    @Test
+    void testInternerSize() {
+        AstInterner interner = new AstInterner();
+        Ast.Expression first = interner.intern(expression("(a + 1) * (a + 1)"));
+        int size = interner.size();
+        // a, 1, a + 1, the group and the product
+        Assertions.assertEquals(5, size);
+        // a separately parsed copy is found rather than added
+        Assertions.assertSame(first, interner.intern(expression("(a + 1) * (a + 1)")));
+        Assertions.assertEquals(size, interner.size());
+        Assertions.assertNotSame(first, interner.intern(expression("(a + 1) * (a + 2)")));
+    }
+
+    @Test
+    void testHashEqual() {
+        Assertions.assertEquals(expression("f(a + b, x[1])").hashCode(), expression("f(a + b, x[1])").hashCode());
+        Assertions.assertEquals(source("FUN main() DO x = 1; END").hashCode(), source("FUN main() DO x = 1; END").hashCode());
+    }
+
+    @Test
+    void testHashExcludesAnalyzer() {
+        Ast.Expression.Access access = new Ast.Expression.Access(Optional.empty(), "x");
+        Ast.Expression.Access analyzed = new Ast.Expression.Access(Optional.empty(), "x");
+        int hash = analyzed.hashCode();
+        analyzed.setVariable(new Environment.Variable("x", "x", Environment.Type.INTEGER, true, Environment.NIL));
+        Assertions.assertEquals(hash, analyzed.hashCode());
+        Assertions.assertEquals(access.hashCode(), analyzed.hashCode());
+        // the analyzer's results are still part of equality
+        Assertions.assertNotEquals(access, analyzed);
+
+        Ast.Expression.Literal literal = new Ast.Expression.Literal(BigInteger.ONE);
+        Ast.Expression.Literal typed = new Ast.Expression.Literal(BigInteger.ONE);
+        typed.setType(Environment.Type.INTEGER);
+        Assertions.assertEquals(literal.hashCode(), typed.hashCode());
+
+        Ast.Expression.Function call = new Ast.Expression.Function("f", List.of());
+        Ast.Expression.Function resolved = new Ast.Expression.Function("f", List.of());
+        resolved.setFunction(new Environment.Function("f", "f", List.of(), Environment.Type.NIL, arguments -> Environment.NIL));
+        Assertions.assertEquals(call.hashCode(), resolved.hashCode());
+    }
+
+    private static List<Ast.Statement> intern(String input) {
+        return new AstInterner().intern(source(input)).getFunctions().get(0).getStatements();
+    }
+
+    private static Ast.Expression value(Ast.Statement statement) {
+        return ((Ast.Statement.Assignment) statement).getValue();
+    }
+
+    private static Ast.Source source(String input) {
+        return new Parser(new Lexer(input).lex()).parseSource();
+    }
+
+    private static Ast.Expression expression(String input) {
+        return new Parser(new Lexer(input).lex()).parseExpression();
+    }
+
+}
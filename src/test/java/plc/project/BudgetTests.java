@@ -0,0 +1,145 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.math.BigInteger;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+/**
+ * Tests that a {@link Budget} stops scripts once they exceed it, or are
+ * cancelled, in both the {@link Interpreter} and compiled code. Each test runs
+ * on both, which must abort at the same point with the same message.
+ */
+final class BudgetTests {
+
+    // counts to ten, which is ten iterations
+    private static final String COUNT = "FUN main(): Integer DO LET i: Integer = 0; WHILE i < 10 DO i = i + 1; END RETURN i; END";
+    private static final String LOOP = "FUN main() DO LET i: Integer = 0; WHILE TRUE DO i = i + 1; END END";
+    private static final String RECURSION = "FUN f(n: Integer): Integer DO RETURN f(n + 1); END FUN main(): Integer DO RETURN f(0); END";
+
+    @ParameterizedTest
+    @MethodSource("engines")
+    void testWithinBudget(String engine) {
+        Assertions.assertEquals(BigInteger.TEN, run(engine, COUNT, Budget.UNLIMITED.withIterations(10).start()).getValue());
+    }
+
+    @ParameterizedTest
+    @MethodSource("engines")
+    void testIterations(String engine) {
+        assertAborted("The script exceeded its budget of 9 loop iterations.",
+                () -> run(engine, COUNT, Budget.UNLIMITED.withIterations(9).start()));
+        assertAborted("The script exceeded its budget of 1000 loop iterations.",
+                () -> run(engine, LOOP, Budget.UNLIMITED.withIterations(1000).start()));
+    }
+
+    @ParameterizedTest
+    @MethodSource("engines")
+    void testNodes(String engine) {
+        assertAborted("The script exceeded its budget of 10000 nodes.",
+                () -> run(engine, LOOP, Budget.UNLIMITED.withNodes(10_000).start()));
+        // calls are charged as well as loops
+        assertAborted("The script exceeded its budget of 100 nodes.",
+                () -> run(engine, RECURSION, Budget.UNLIMITED.withNodes(100).start()));
+    }
+
+    @ParameterizedTest
+    @MethodSource("engines")
+    void testTime(String engine) {
+        long start = System.nanoTime();
+        assertAborted("The script exceeded its budget of 50ms.",
+                () -> run(engine, LOOP, Budget.UNLIMITED.withTime(Duration.ofMillis(50)).start()));
+        Assertions.assertTrue(System.nanoTime() - start < Duration.ofSeconds(2).toNanos());
+    }
+
+    @ParameterizedTest
+    @MethodSource("engines")
+    void testCancel(String engine) throws InterruptedException {
+        Budget.Meter meter = Budget.UNLIMITED.start();
+        AtomicReference<RuntimeException> error = new AtomicReference<>();
+        Thread thread = new Thread(() -> {
+            try {
+                run(engine, LOOP, meter);
+            } catch (RuntimeException e) {
+                error.set(e);
+            }
+        });
+        thread.start();
+        Thread.sleep(50);
+        meter.cancel();
+        thread.join(2000);
+        Assertions.assertFalse(thread.isAlive());
+        Assertions.assertEquals(Budget.Aborted.class, error.get().getClass());
+        Assertions.assertEquals("The script was cancelled.", error.get().getMessage());
+    }
+
+    @ParameterizedTest
+    @MethodSource("engines")
+    void testInterrupt(String engine) throws InterruptedException {
+        AtomicReference<RuntimeException> error = new AtomicReference<>();
+        Thread thread = new Thread(() -> {
+            try {
+                run(engine, LOOP, Budget.UNLIMITED.start());
+            } catch (RuntimeException e) {
+                error.set(e);
+            }
+        });
+        thread.start();
+        Thread.sleep(50);
+        thread.interrupt();
+        thread.join(2000);
+        Assertions.assertFalse(thread.isAlive());
+        Assertions.assertEquals("The script was cancelled.", error.get().getMessage());
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testSameCharges(String test, Budget budget) {
+        // the number of iterations each engine ran before it was aborted
+        String source = "VAR i: Integer = 0; FUN main() DO WHILE TRUE DO i = i + 1; END END";
+        Ast.Source ast = new Parser(new Lexer(source).lex()).parseSource();
+        Interpreter interpreter = new Interpreter(new Scope(null), budget.start());
+        assertAborted(null, () -> interpreter.visit(ast));
+        Scope scope = new Scope(null);
+        assertAborted(null, () -> Compiler.compile(ast).execute(scope, budget.start()));
+        Assertions.assertEquals(
+                interpreter.getScope().lookupVariable("i").getValue().getValue(),
+                scope.lookupVariable("i").getValue().getValue()
+        );
+    }
+
+    private static Stream<Arguments> testSameCharges() {
+        return Stream.of(
+                Arguments.of("Iterations", Budget.UNLIMITED.withIterations(1000)),
+                Arguments.of("Nodes", Budget.UNLIMITED.withNodes(12_345))
+        );
+    }
+
+    private static Stream<Arguments> engines() {
+        return Stream.of(
+                Arguments.of("Interpreter"),
+                Arguments.of("Compiler")
+        );
+    }
+
+    private static Environment.PlcObject run(String engine, String source, Budget.Meter meter) {
+        Ast.Source ast = new Parser(new Lexer(source).lex()).parseSource();
+        if (engine.equals("Interpreter")) {
+            return new Interpreter(new Scope(null), meter).visit(ast);
+        }
+        return Compiler.compile(ast).execute(new Scope(null), meter);
+    }
+
+    // asserts the run is aborted, with the given message unless it's null
+    private static void assertAborted(String message, Runnable run) {
+        Budget.Aborted aborted = Assertions.assertThrows(Budget.Aborted.class, run::run);
+        if (message != null) {
+            Assertions.assertEquals(message, aborted.getMessage());
+        }
+    }
+
+}
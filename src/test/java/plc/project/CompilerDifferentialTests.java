@@ -0,0 +1,303 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * Runs randomly generated programs through the interpreter and as compiled
+ * code, checking that both give the same outcome. The programs are mostly
+ * ill-typed, so this covers the errors as much as the values, and include
+ * integers around the bounds of a {@code long} to cover the compiler's
+ * {@code Long} arithmetic. Each program is generated from its own seed, so a
+ * failure names the seed which reproduces it.
+ */
+final class CompilerDifferentialTests {
+
+    private static final int PROGRAMS = 2000;
+
+    private static final String[] OPERATORS = {"&&", "||", "<", ">", "==", "!=", "+", "-", "*", "/", "^"};
+    private static final String[] ARITHMETIC = {"+", "-", "*", "/", "=="};
+    private static final String[] VARIABLES = {"x", "y", "z"};
+
+    @Test
+    void testStatements() {
+        for (int seed = 0; seed < PROGRAMS; seed++) {
+            Generator generator = new Generator(seed);
+            List<Ast.Statement> program = new ArrayList<>();
+            for (int i = 1 + generator.random.nextInt(4); i > 0; i--) {
+                program.add(generator.statement(3));
+            }
+
+            StringBuilder interpretedLog = new StringBuilder();
+            Scope interpreted = scope(interpretedLog);
+            Interpreter interpreter = new Interpreter(interpreted);
+            String expected = outcome(() -> {
+                program.forEach(interpreter::visit);
+                return Environment.NIL;
+            }, interpreted, interpretedLog);
+
+            StringBuilder compiledLog = new StringBuilder();
+            Scope compiled = scope(compiledLog);
+            Scope scope = new Scope(compiled);
+            List<Compiler.Code> code = new ArrayList<>();
+            program.forEach(statement -> code.add(Compiler.compile(statement)));
+            String actual = outcome(() -> {
+                code.forEach(c -> c.execute(scope));
+                return Environment.NIL;
+            }, compiled, compiledLog);
+
+            Assertions.assertEquals(expected, actual, "Seed " + seed + ": " + program);
+        }
+    }
+
+    /**
+     * Most of the statements above fail on their types before they overflow,
+     * so integer arithmetic is also checked on its own.
+     */
+    @Test
+    void testArithmetic() {
+        for (int seed = 0; seed < PROGRAMS; seed++) {
+            Ast.Expression expression = new Generator(seed).arithmetic(3);
+            String expected = value(() -> new Interpreter(new Scope(null)).visit(expression).getValue());
+            String actual = value(() -> Compiler.compile(expression).execute(new Scope(null)).getValue());
+            Assertions.assertEquals(expected, actual, "Seed " + seed + ": " + expression);
+        }
+    }
+
+    /**
+     * Runs whole sources, whose globals are generated and whose functions
+     * {@code h0} to {@code h2} and {@code main} each declare a local, run
+     * some statements and call the one before, so the statements above also
+     * run in functions' frames, with their own locals and returns.
+     */
+    @Test
+    void testSources() {
+        for (int seed = 0; seed < PROGRAMS; seed++) {
+            Ast.Source source = new Generator(seed).source();
+
+            StringBuilder interpretedLog = new StringBuilder();
+            Interpreter interpreter = new Interpreter(functions(interpretedLog));
+            String expected = outcome(() -> interpreter.visit(source), interpreter.getScope(), interpretedLog);
+
+            StringBuilder compiledLog = new StringBuilder();
+            Scope scope = new Scope(functions(compiledLog));
+            Compiler.Code code = Compiler.compile(source);
+            String actual = outcome(() -> code.execute(scope), scope, compiledLog);
+
+            Assertions.assertEquals(expected, actual, "Seed " + seed + ": " + source);
+        }
+    }
+
+    /**
+     * Creates the scope a program runs in, where {@code f/1} returns its
+     * argument and logs it, so the order of calls is compared too.
+     */
+    private static Scope scope(StringBuilder log) {
+        Scope scope = new Scope(null);
+        scope.defineVariable("x", true, Environment.create(BigInteger.ONE));
+        scope.defineVariable("y", true, Environment.create("string"));
+        scope.defineVariable("c", true, Environment.create(BigInteger.ZERO));
+        scope.defineVariable("l", true, Environment.create(new ArrayList<>(Arrays.asList(BigInteger.ONE, BigInteger.TWO, BigInteger.TEN))));
+        scope.defineFunction("f", 1, args -> {
+            log.append(args.get(0).getValue()).append(';');
+            return args.get(0);
+        });
+        return scope;
+    }
+
+    // the scope a source runs in, which defines its own variables
+    private static Scope functions(StringBuilder log) {
+        Scope scope = new Scope(null);
+        scope.defineFunction("f", 1, args -> {
+            log.append(args.get(0).getValue()).append(';');
+            return args.get(0);
+        });
+        return scope;
+    }
+
+    /**
+     * Describes how a program ended, the variables it left behind and the
+     * calls it made. A {@link ClassCastException}'s message names whichever
+     * classes were cast, which differ as compiled code keeps integers as
+     * {@code Long}s, so only that one was thrown is compared.
+     */
+    private static String outcome(Supplier<Environment.PlcObject> program, Scope scope, StringBuilder log) {
+        String outcome;
+        try {
+            outcome = "completed with " + program.get().getValue();
+        } catch (Interpreter.Return e) {
+            outcome = "returned " + e.value.getValue();
+        } catch (ClassCastException e) {
+            outcome = ClassCastException.class.getName();
+        } catch (RuntimeException e) {
+            outcome = e.getClass().getName() + ": " + e.getMessage();
+        }
+        for (String name : Arrays.asList("x", "y", "c", "l")) {
+            try {
+                outcome += ", " + name + " = " + scope.lookupVariable(name).getValue().getValue();
+            } catch (RuntimeException e) {
+                // a source which failed before defining it
+                outcome += ", " + name + " undefined";
+            }
+        }
+        return outcome + ", called " + log;
+    }
+
+    private static String value(Supplier<Object> expression) {
+        try {
+            Object value = expression.get();
+            return value + " (" + value.getClass().getName() + ")";
+        } catch (RuntimeException e) {
+            return e.getClass().getName() + ": " + e.getMessage();
+        }
+    }
+
+    /**
+     * Generates random ASTs over the variables {@code x}, {@code y}, the
+     * list {@code l} and the function {@code f/1}, and {@code z} which is
+     * only defined if the program declares it. Loops count {@code c} up to
+     * three, so every program terminates.
+     */
+    private static final class Generator {
+
+        private final Random random;
+
+        private Generator(long seed) {
+            random = new Random(seed);
+        }
+
+        private Ast.Expression literal() {
+            switch (random.nextInt(9)) {
+                case 0: return new Ast.Expression.Literal(BigInteger.valueOf(random.nextInt(7) - 2));
+                case 1: return new Ast.Expression.Literal(new BigDecimal(random.nextInt(5) + "." + random.nextInt(3)));
+                case 2: return new Ast.Expression.Literal(random.nextBoolean());
+                case 3: return new Ast.Expression.Literal("s" + random.nextInt(3));
+                case 4: return new Ast.Expression.Literal((char) ('a' + random.nextInt(3)));
+                case 5: return new Ast.Expression.Literal(null);
+                case 6: return new Ast.Expression.Literal(BigInteger.valueOf(Long.MAX_VALUE - random.nextInt(3)));
+                // Long.MIN_VALUE, one above it or one below it
+                case 7: return new Ast.Expression.Literal(BigInteger.valueOf(Long.MIN_VALUE + random.nextInt(2)).subtract(BigInteger.valueOf(random.nextInt(2))));
+                default: return new Ast.Expression.Literal(BigInteger.valueOf(random.nextInt(3)));
+            }
+        }
+
+        // an integer which is small or around the bounds of a long
+        private Ast.Expression integer() {
+            switch (random.nextInt(4)) {
+                case 0: return new Ast.Expression.Literal(BigInteger.valueOf(Long.MAX_VALUE - random.nextInt(3)));
+                case 1: return new Ast.Expression.Literal(BigInteger.valueOf(Long.MIN_VALUE + random.nextInt(3)));
+                default: return new Ast.Expression.Literal(BigInteger.valueOf(random.nextInt(5) - 2));
+            }
+        }
+
+        private Ast.Expression arithmetic(int depth) {
+            switch (depth <= 0 ? 0 : random.nextInt(4)) {
+                case 0: return integer();
+                case 1: return new Ast.Expression.Group(arithmetic(depth - 1));
+                default: return new Ast.Expression.Binary(ARITHMETIC[random.nextInt(ARITHMETIC.length)], arithmetic(depth - 1), arithmetic(depth - 1));
+            }
+        }
+
+        private Ast.Expression.Access variable() {
+            return new Ast.Expression.Access(Optional.empty(), VARIABLES[random.nextInt(VARIABLES.length)]);
+        }
+
+        private Ast.Expression expression(int depth) {
+            switch (depth <= 0 ? random.nextInt(2) : random.nextInt(7)) {
+                case 0: return literal();
+                case 1: return variable();
+                case 2: return new Ast.Expression.Access(Optional.of(expression(depth - 1)), "l");
+                case 3: return new Ast.Expression.Group(expression(depth - 1));
+                case 4: return new Ast.Expression.Function("f", Arrays.asList(expression(depth - 1)));
+                case 5: return new Ast.Expression.PlcList(Arrays.asList(expression(depth - 1), expression(depth - 1)));
+                default: return new Ast.Expression.Binary(OPERATORS[random.nextInt(OPERATORS.length)], expression(depth - 1), expression(depth - 1));
+            }
+        }
+
+        private List<Ast.Statement> block(int depth) {
+            List<Ast.Statement> statements = new ArrayList<>();
+            for (int i = random.nextInt(3); i > 0; i--) {
+                statements.add(statement(depth - 1));
+            }
+            return statements;
+        }
+
+        private Ast.Statement statement(int depth) {
+            switch (depth <= 0 ? random.nextInt(3) : random.nextInt(7)) {
+                case 0: return new Ast.Statement.Expression(expression(2));
+                case 1: return new Ast.Statement.Declaration(random.nextBoolean() ? "x" : "z", random.nextBoolean() ? Optional.of(expression(2)) : Optional.empty());
+                case 2: return new Ast.Statement.Assignment(receiver(), expression(2));
+                case 3: return new Ast.Statement.If(expression(2), block(depth), block(depth));
+                case 4: {
+                    List<Ast.Statement.Case> cases = new ArrayList<>();
+                    for (int i = random.nextInt(3); i > 0; i--) {
+                        cases.add(new Ast.Statement.Case(Optional.of(literal()), block(depth)));
+                    }
+                    cases.add(new Ast.Statement.Case(Optional.empty(), block(depth)));
+                    return new Ast.Statement.Switch(expression(1), cases);
+                }
+                case 5: {
+                    // WHILE c < 3 DO ... c = c + 1; END
+                    Ast.Expression.Access counter = new Ast.Expression.Access(Optional.empty(), "c");
+                    List<Ast.Statement> statements = block(depth);
+                    statements.add(new Ast.Statement.Assignment(counter, new Ast.Expression.Binary("+", counter, new Ast.Expression.Literal(BigInteger.ONE))));
+                    return new Ast.Statement.While(new Ast.Expression.Binary("<", counter, new Ast.Expression.Literal(BigInteger.valueOf(3))), statements);
+                }
+                default: return new Ast.Statement.Return(expression(1));
+            }
+        }
+
+        private Ast.Source source() {
+            List<Ast.Global> globals = Arrays.asList(
+                    new Ast.Global("x", true, Optional.of(literal())),
+                    new Ast.Global("y", random.nextBoolean(), Optional.of(literal())),
+                    new Ast.Global("c", true, Optional.of(new Ast.Expression.Literal(BigInteger.ZERO))),
+                    new Ast.Global("l", true, Optional.of(new Ast.Expression.PlcList(Arrays.asList(
+                            new Ast.Expression.Literal(BigInteger.ONE),
+                            new Ast.Expression.Literal(BigInteger.TWO)
+                    ))))
+            );
+            List<Ast.Function> functions = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                // FUN hi(p) DO LET z = p; ... h(i - 1)(...); RETURN z + ...; END
+                List<Ast.Statement> statements = new ArrayList<>();
+                statements.add(new Ast.Statement.Declaration("z", Optional.of(new Ast.Expression.Access(Optional.empty(), "p"))));
+                statements.addAll(block(3));
+                if (i > 0) {
+                    statements.add(new Ast.Statement.Expression(new Ast.Expression.Function("h" + (i - 1), Arrays.asList(expression(1)))));
+                }
+                if (random.nextBoolean()) {
+                    statements.add(new Ast.Statement.Return(new Ast.Expression.Binary("+", new Ast.Expression.Access(Optional.empty(), "z"), expression(1))));
+                }
+                functions.add(new Ast.Function("h" + i, Arrays.asList("p"), statements));
+            }
+            List<Ast.Statement> main = new ArrayList<>();
+            main.add(new Ast.Statement.Declaration("z", Optional.of(literal())));
+            main.addAll(block(3));
+            main.add(new Ast.Statement.Return(new Ast.Expression.Function("h2", Arrays.asList(expression(1)))));
+            functions.add(new Ast.Function("main", Arrays.asList(), main));
+            return new Ast.Source(globals, functions);
+        }
+
+        // mostly a variable, sometimes an element of l and rarely something
+        // which can't be assigned
+        private Ast.Expression receiver() {
+            switch (random.nextInt(10)) {
+                case 0: case 1: return new Ast.Expression.Access(Optional.of(expression(1)), "l");
+                case 2: return literal();
+                default: return variable();
+            }
+        }
+
+    }
+
+}
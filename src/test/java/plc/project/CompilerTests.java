@@ -0,0 +1,415 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Runs the cases of {@link InterpreterTests} through the {@link Compiler}.
+ * Rather than checking each case's expected value, which the interpreter
+ * tests already do, compiled code is checked against the interpreter: it
+ * must give the same value, or fail with the same error, print the same
+ * output and leave the same variables behind.
+ */
+final class CompilerTests {
+
+    @ParameterizedTest
+    @MethodSource("plc.project.InterpreterTests#testSource")
+    void testSource(String test, Ast.Source ast, Object expected) {
+        test(ast, scope -> {});
+    }
+
+    @ParameterizedTest
+    @MethodSource("plc.project.InterpreterTests#testGlobal")
+    void testGlobal(String test, Ast.Global ast, Object expected) {
+        test(ast, scope -> {}).assertVariable(ast.getName());
+    }
+
+    @Test
+    void testList() {
+        // LIST list = [1, 5, 10];
+        Ast.Global ast = new Ast.Global("list", true, Optional.of(new Ast.Expression.PlcList(Arrays.asList(
+                new Ast.Expression.Literal(BigInteger.ONE),
+                new Ast.Expression.Literal(BigInteger.valueOf(5)),
+                new Ast.Expression.Literal(BigInteger.TEN)
+        ))));
+        test(ast, scope -> {}).assertVariable("list");
+    }
+
+    @ParameterizedTest
+    @MethodSource("plc.project.InterpreterTests#testFunction")
+    void testFunction(String test, Ast.Function ast, List<Environment.PlcObject> args, Object expected) {
+        test(ast, scope -> {}).assertCall(ast.getName(), args);
+    }
+
+    @Test
+    void testExpressionStatement() {
+        // print("Hello, World!");
+        test(new Ast.Statement.Expression(
+                new Ast.Expression.Function("print", Arrays.asList(new Ast.Expression.Literal("Hello, World!")))
+        ), scope -> {});
+    }
+
+    @ParameterizedTest
+    @MethodSource("plc.project.InterpreterTests#testDeclarationStatement")
+    void testDeclarationStatement(String test, Ast.Statement.Declaration ast, Object expected) {
+        test(ast, scope -> {}).assertVariable(ast.getName());
+    }
+
+    @Test
+    void testVariableAssignmentStatement() {
+        // variable = 1;
+        test(new Ast.Statement.Assignment(
+                new Ast.Expression.Access(Optional.empty(), "variable"),
+                new Ast.Expression.Literal(BigInteger.ONE)
+        ), scope -> scope.defineVariable("variable", true, Environment.create("variable"))).assertVariable("variable");
+    }
+
+    @Test
+    void testListAssignmentStatement() {
+        // list[2] = 3;
+        test(new Ast.Statement.Assignment(
+                new Ast.Expression.Access(Optional.of(new Ast.Expression.Literal(BigInteger.valueOf(2))), "list"),
+                new Ast.Expression.Literal(BigInteger.valueOf(3))
+        ), scope -> scope.defineVariable("list", true, Environment.create(
+                Arrays.asList(BigInteger.ONE, BigInteger.valueOf(5), BigInteger.TEN)
+        ))).assertVariable("list");
+    }
+
+    @ParameterizedTest
+    @MethodSource("plc.project.InterpreterTests#testIfStatement")
+    void testIfStatement(String test, Ast.Statement.If ast, Object expected) {
+        test(ast, scope -> scope.defineVariable("num", true, Environment.NIL)).assertVariable("num");
+    }
+
+    @Test
+    void testSwitchStatement() {
+        // SWITCH letter CASE 'y': print("yes"); letter = 'n'; DEFAULT: print("no"); END
+        Ast.Statement.Switch ast = new Ast.Statement.Switch(new Ast.Expression.Access(Optional.empty(), "letter"), Arrays.asList(
+                new Ast.Statement.Case(Optional.of(new Ast.Expression.Literal('y')), Arrays.asList(
+                        new Ast.Statement.Expression(new Ast.Expression.Function("print", Arrays.asList(new Ast.Expression.Literal("yes")))),
+                        new Ast.Statement.Assignment(new Ast.Expression.Access(Optional.empty(), "letter"), new Ast.Expression.Literal('n'))
+                )),
+                new Ast.Statement.Case(Optional.empty(), Arrays.asList(
+                        new Ast.Statement.Expression(new Ast.Expression.Function("print", Arrays.asList(new Ast.Expression.Literal("no"))))
+                ))
+        ));
+        test(ast, scope -> scope.defineVariable("letter", true, Environment.create('y'))).assertVariable("letter");
+    }
+
+    @Test
+    void testWhileStatement() {
+        // WHILE num != 10 DO num = num + 1; END
+        test(new Ast.Statement.While(
+                new Ast.Expression.Binary("!=",
+                        new Ast.Expression.Access(Optional.empty(), "num"),
+                        new Ast.Expression.Literal(BigInteger.TEN)
+                ),
+                Arrays.asList(new Ast.Statement.Assignment(
+                        new Ast.Expression.Access(Optional.empty(), "num"),
+                        new Ast.Expression.Binary("+",
+                                new Ast.Expression.Access(Optional.empty(), "num"),
+                                new Ast.Expression.Literal(BigInteger.ONE)
+                        )
+                ))
+        ), scope -> scope.defineVariable("num", true, Environment.create(BigInteger.ZERO))).assertVariable("num");
+    }
+
+    @ParameterizedTest
+    @MethodSource("plc.project.InterpreterTests#testLiteralExpression")
+    void testLiteralExpression(String test, Ast ast, Object expected) {
+        test(ast, scope -> {});
+    }
+
+    @ParameterizedTest
+    @MethodSource("plc.project.InterpreterTests#testGroupExpression")
+    void testGroupExpression(String test, Ast ast, Object expected) {
+        test(ast, scope -> {});
+    }
+
+    @ParameterizedTest
+    @MethodSource("plc.project.InterpreterTests#testBinaryExpression")
+    void testBinaryExpression(String test, Ast ast, Object expected) {
+        test(ast, scope -> {});
+    }
+
+    @ParameterizedTest
+    @MethodSource("plc.project.InterpreterTests#testBinaryExpressionError")
+    void testBinaryExpressionError(String test, Ast ast, String message) {
+        test(ast, scope -> {});
+    }
+
+    @ParameterizedTest
+    @MethodSource("plc.project.InterpreterTests#testAccessExpression")
+    void testAccessExpression(String test, Ast ast, Object expected) {
+        test(ast, scope -> scope.defineVariable("variable", true, Environment.create("variable")));
+    }
+
+    @Test
+    void testListAccessExpression() {
+        // list[1]
+        test(new Ast.Expression.Access(Optional.of(new Ast.Expression.Literal(BigInteger.ONE)), "list"),
+                scope -> scope.defineVariable("list", true, Environment.create(
+                        Arrays.asList(BigInteger.ONE, BigInteger.valueOf(5), BigInteger.TEN)
+                )));
+    }
+
+    @ParameterizedTest
+    @MethodSource("plc.project.InterpreterTests#testFunctionExpression")
+    void testFunctionExpression(String test, Ast ast, Object expected) {
+        test(ast, scope -> scope.defineFunction("function", 0, args -> Environment.create("function")));
+    }
+
+    @Test
+    void testPlcList() {
+        // [1, 5, 10]
+        test(new Ast.Expression.PlcList(Arrays.asList(
+                new Ast.Expression.Literal(BigInteger.ONE),
+                new Ast.Expression.Literal(BigInteger.valueOf(5)),
+                new Ast.Expression.Literal(BigInteger.TEN)
+        )), scope -> {});
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testLongArithmetic(String test, Ast ast, Object expected) {
+        Consumer<Scope> setup = scope -> scope.defineVariable("big", true, Environment.create(BigInteger.valueOf(5)));
+        test(ast, setup);
+        Scope scope = new Scope(null);
+        setup.accept(scope);
+        Assertions.assertEquals(expected, Compiler.compile(ast).execute(scope).getValue());
+    }
+
+    private static Stream<Arguments> testLongArithmetic() {
+        BigInteger max = BigInteger.valueOf(Long.MAX_VALUE);
+        BigInteger min = BigInteger.valueOf(Long.MIN_VALUE);
+        return Stream.of(
+                Arguments.of("Add Overflow", binary("+", max, BigInteger.ONE), max.add(BigInteger.ONE)),
+                Arguments.of("Subtract Underflow", binary("-", min, BigInteger.ONE), min.subtract(BigInteger.ONE)),
+                Arguments.of("Multiply Overflow", binary("*", min, BigInteger.valueOf(-1)), max.add(BigInteger.ONE)),
+                Arguments.of("Divide Min By Negative One", binary("/", min, BigInteger.valueOf(-1)), max.add(BigInteger.ONE)),
+                Arguments.of("Back Into Range",
+                        new Ast.Expression.Binary("-", binary("+", max, BigInteger.ONE), new Ast.Expression.Literal(BigInteger.ONE)),
+                        max
+                ),
+                Arguments.of("Equal After Overflow",
+                        new Ast.Expression.Binary("==", binary("-", min, BigInteger.ONE), new Ast.Expression.Literal(min.subtract(BigInteger.ONE))),
+                        true
+                ),
+                // big is a BigInteger defined outside of the compiled code,
+                // compared with a literal kept as a Long
+                Arguments.of("Equal Variable",
+                        new Ast.Expression.Binary("==", new Ast.Expression.Access(Optional.empty(), "big"), new Ast.Expression.Literal(BigInteger.valueOf(5))),
+                        true
+                ),
+                Arguments.of("Not Equal Variable",
+                        new Ast.Expression.Binary("!=", new Ast.Expression.Literal(BigInteger.valueOf(5)), new Ast.Expression.Access(Optional.empty(), "big")),
+                        false
+                )
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testScoping(String test, String source) {
+        test(new Parser(new Lexer(source).lex()).parseSource(), scope -> {}).assertVariable("x");
+    }
+
+    private static Stream<Arguments> testScoping() {
+        return Stream.of(
+                Arguments.of("Local",
+                        "VAR x: Integer = 1; FUN main(): Integer DO LET y: Integer = 2; RETURN x + y; END"
+                ),
+                Arguments.of("Shadowed Global",
+                        "VAR x: Integer = 1; FUN main(): Integer DO LET x: Integer = 2; x = 3; RETURN x; END"
+                ),
+                Arguments.of("Shadowed Local",
+                        "VAR x: Integer = 1; FUN main(): Integer DO LET y: Integer = 2; IF TRUE DO LET y: Integer = 3; x = y; END RETURN y; END"
+                ),
+                Arguments.of("Declared From Shadowed",
+                        "VAR x: Integer = 1; FUN main(): Integer DO LET x: Integer = x + 1; RETURN x; END"
+                ),
+                Arguments.of("Outer Local",
+                        "VAR x: Integer = 1; FUN main(): Integer DO LET y: Integer = 1; IF TRUE DO IF TRUE DO y = y + 1; END END RETURN y; END"
+                ),
+                Arguments.of("Out Of Scope",
+                        "VAR x: Integer = 1; FUN main(): Integer DO IF TRUE DO LET y: Integer = 2; END RETURN y; END"
+                ),
+                // the branches' variables share slots, which must not leak
+                // from one to the other
+                Arguments.of("Sibling Blocks",
+                        "VAR x: Integer = 1; FUN main() DO IF x == 1 DO LET y: Integer = 2; x = y; END IF x == 2 DO LET z; RETURN z; END END"
+                ),
+                Arguments.of("Loop Body",
+                        "VAR x: Integer = 0; FUN main(): Integer DO LET i: Integer = 0; WHILE i < 3 DO LET y: Integer = i * 2; x = x + y; i = i + 1; END RETURN i; END"
+                ),
+                Arguments.of("Parameter",
+                        "VAR x: Integer = 1; FUN f(x: Integer): Integer DO x = x + 1; RETURN x; END FUN main(): Integer DO RETURN f(10); END"
+                ),
+                Arguments.of("Redeclared",
+                        "VAR x: Integer = 1; FUN main(): Integer DO LET y: Integer = 1; LET y: Integer = 2; RETURN y; END"
+                ),
+                Arguments.of("Redeclared After Value",
+                        "VAR x: Integer = 1; FUN g(): Integer DO x = 2; RETURN x; END FUN main(): Integer DO LET y: Integer = 1; LET y: Integer = g(); RETURN y; END"
+                ),
+                Arguments.of("Redeclared Parameter",
+                        "VAR x: Integer = 1; FUN f(y: Integer, y: Integer): Integer DO RETURN y; END FUN main(): Integer DO RETURN f(1, 2); END"
+                ),
+                Arguments.of("Redeclared Global",
+                        "VAR x: Integer = 1; VAR x: Integer = 2; FUN main(): Integer DO RETURN x; END"
+                )
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testFunctionCalls(String test, String source, Object expected) {
+        Ast.Source ast = new Parser(new Lexer(source).lex()).parseSource();
+        test(ast, scope -> {});
+        Assertions.assertEquals(expected, Compiler.compile(ast).execute(new Scope(null)).getValue());
+    }
+
+    private static Stream<Arguments> testFunctionCalls() {
+        return Stream.of(
+                Arguments.of("Recursion",
+                        "FUN fact(n: Integer): Integer DO IF n == 0 DO RETURN 1; END RETURN n * fact(n - 1); END "
+                                + "FUN main(): Integer DO RETURN fact(20); END",
+                        BigInteger.valueOf(2432902008176640000L)
+                ),
+                Arguments.of("Double Recursion",
+                        "FUN fib(n: Integer): Integer DO IF n < 2 DO RETURN n; END RETURN fib(n - 1) + fib(n - 2); END "
+                                + "FUN main(): Integer DO RETURN fib(15); END",
+                        BigInteger.valueOf(610)
+                ),
+                Arguments.of("Mutual Recursion",
+                        "FUN even(n: Integer): Boolean DO IF n == 0 DO RETURN TRUE; END RETURN odd(n - 1); END "
+                                + "FUN odd(n: Integer): Boolean DO IF n == 0 DO RETURN FALSE; END RETURN even(n - 1); END "
+                                + "FUN main(): Boolean DO RETURN even(101); END",
+                        false
+                ),
+                // each call has its own locals, which the calls it makes
+                // don't change
+                Arguments.of("Locals Per Call",
+                        "FUN f(n: Integer): Integer DO LET m: Integer = n; IF n > 0 DO f(n - 1); END RETURN m; END "
+                                + "FUN main(): Integer DO RETURN f(5); END",
+                        BigInteger.valueOf(5)
+                ),
+                Arguments.of("Parameter Assignment",
+                        "FUN f(n: Integer): Integer DO n = n + 1; RETURN n; END "
+                                + "FUN main(): Integer DO LET n: Integer = 1; f(n); RETURN n; END",
+                        BigInteger.ONE
+                ),
+                Arguments.of("Fall Off The End",
+                        "FUN f(n: Integer) DO LET m: Integer = n; END "
+                                + "FUN main() DO RETURN f(1); END",
+                        Environment.NIL.getValue()
+                ),
+                Arguments.of("Main Falls Off The End",
+                        "FUN main() DO LET m: Integer = 1; END",
+                        Environment.NIL.getValue()
+                ),
+                Arguments.of("Return From Loop",
+                        "FUN main(): Integer DO LET i: Integer = 0; WHILE TRUE DO IF i == 3 DO RETURN i; END i = i + 1; END END",
+                        BigInteger.valueOf(3)
+                ),
+                Arguments.of("Return From Switch",
+                        "FUN f(c: Character): String DO SWITCH c CASE 'a': RETURN \"a\"; DEFAULT LET d: String = \"other\"; END RETURN \"none\"; END "
+                                + "FUN main(): String DO RETURN f('a'); END",
+                        "a"
+                ),
+                Arguments.of("Call Before Definition",
+                        "VAR x: Integer = 1; FUN main(): Integer DO RETURN f(); END FUN f(): Integer DO RETURN x; END",
+                        BigInteger.ONE
+                )
+        );
+    }
+
+    private static Ast.Expression binary(String operator, BigInteger left, BigInteger right) {
+        return new Ast.Expression.Binary(operator, new Ast.Expression.Literal(left), new Ast.Expression.Literal(right));
+    }
+
+    /**
+     * Runs an AST through the interpreter and as compiled code, each in a
+     * scope set up the same way, and checks that both have the same outcome.
+     * The compiled code runs in a child of its scope holding the builtins,
+     * as the interpreter defines them in a child of its own.
+     */
+    private static Runs test(Ast ast, Consumer<Scope> setup) {
+        Scope interpreted = new Scope(null);
+        setup.accept(interpreted);
+        Interpreter interpreter = new Interpreter(interpreted);
+        List<Object> expected = outcome(() -> interpreter.visit(ast));
+
+        Scope compiled = new Scope(null);
+        setup.accept(compiled);
+        Scope scope = new Scope(compiled);
+        Interpreter.defineBuiltins(scope);
+        List<Object> actual = outcome(() -> Compiler.compile(ast).execute(scope));
+
+        Assertions.assertEquals(expected, actual);
+        return new Runs(interpreter.getScope(), scope);
+    }
+
+    /**
+     * Returns the value a run gave, or how it failed, and what it printed.
+     */
+    private static List<Object> outcome(Supplier<Environment.PlcObject> run) {
+        PrintStream sysout = System.out;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(out));
+        Object result;
+        try {
+            result = run.get().getValue();
+        } catch (Interpreter.Return e) {
+            result = Arrays.asList("RETURN", e.value.getValue());
+        } catch (RuntimeException e) {
+            result = e.getClass().getName() + ": " + e.getMessage();
+        } finally {
+            System.setOut(sysout);
+        }
+        return Arrays.asList(result, out.toString());
+    }
+
+    /**
+     * The scopes an interpreter and compiled code ran in, to compare what
+     * they left behind.
+     */
+    private static final class Runs {
+
+        private final Scope interpreted;
+        private final Scope compiled;
+
+        private Runs(Scope interpreted, Scope compiled) {
+            this.interpreted = interpreted;
+            this.compiled = compiled;
+        }
+
+        private void assertVariable(String name) {
+            Assertions.assertEquals(
+                    interpreted.lookupVariable(name).getValue().getValue(),
+                    compiled.lookupVariable(name).getValue().getValue()
+            );
+        }
+
+        private void assertCall(String name, List<Environment.PlcObject> args) {
+            Assertions.assertEquals(
+                    outcome(() -> interpreted.lookupFunction(name, args.size()).invoke(args)),
+                    outcome(() -> compiled.lookupFunction(name, args.size()).invoke(args))
+            );
+        }
+
+    }
+
+}
@@ -26,7 +26,7 @@ final class InterpreterTests {
         test(ast, expected, new Scope(null));
     }
 
-    private static Stream<Arguments> testSource() {
+    static Stream<Arguments> testSource() {
         return Stream.of(
                 // FUN main() DO RETURN 0; END
                 Arguments.of("Main", new Ast.Source(
@@ -46,7 +46,14 @@ final class InterpreterTests {
                                         new Ast.Expression.Access(Optional.empty(), "x"),
                                         new Ast.Expression.Access(Optional.empty(), "y")                                ))
                         )))
-                ), Environment.NIL.getValue())
+                ), Environment.NIL.getValue()),
+                // FUN main() DO RETURN "literal=null"; END
+                Arguments.of("String Like Nil", new Ast.Source(
+                        Arrays.asList(),
+                        Arrays.asList(new Ast.Function("main", Arrays.asList(), Arrays.asList(
+                                new Ast.Statement.Return(new Ast.Expression.Literal("literal=null")))
+                        ))
+                ), "literal=null")
         );
     }
 
@@ -57,7 +64,7 @@ final class InterpreterTests {
         Assertions.assertEquals(expected, scope.lookupVariable(ast.getName()).getValue().getValue());
     }
 
-    private static Stream<Arguments> testGlobal() {
+    static Stream<Arguments> testGlobal() {
         return Stream.of(
                 // VAR name;
                 Arguments.of("Mutable", new Ast.Global("name", true, Optional.empty()), Environment.NIL.getValue()),
@@ -89,7 +96,7 @@ final class InterpreterTests {
         Assertions.assertEquals(expected, scope.lookupFunction(ast.getName(), args.size()).invoke(args).getValue());
     }
 
-    private static Stream<Arguments> testFunction() {
+    static Stream<Arguments> testFunction() {
         return Stream.of(
                 // FUN main() DO RETURN 0; END
                 /*Arguments.of("Main",
@@ -136,7 +143,7 @@ final class InterpreterTests {
         Assertions.assertEquals(expected, scope.lookupVariable(ast.getName()).getValue().getValue());
     }
 
-    private static Stream<Arguments> testDeclarationStatement() {
+    static Stream<Arguments> testDeclarationStatement() {
         return Stream.of(
                 // LET name;
                 Arguments.of("Declaration",
@@ -188,7 +195,7 @@ final class InterpreterTests {
         Assertions.assertEquals(expected, scope.lookupVariable("num").getValue().getValue());
     }
 
-    private static Stream<Arguments> testIfStatement() {
+    static Stream<Arguments> testIfStatement() {
         return Stream.of(
                 // IF TRUE DO num = 1; END
                 Arguments.of("True Condition",
@@ -265,13 +272,60 @@ final class InterpreterTests {
         Assertions.assertEquals(BigInteger.TEN, scope.lookupVariable("num").getValue().getValue());
     }
 
+    @ParameterizedTest
+    @MethodSource
+    void testBlockScope(String test, String input, Object expected) {
+        // blocks which declare nothing run in the enclosing scope, and the
+        // rest in their own, which must not be told apart by the results
+        Scope scope = new Scope(null);
+        scope.defineVariable("x", true, Environment.create(BigInteger.ONE));
+        Interpreter interpreter = new Interpreter(scope);
+        Scope global = interpreter.getScope();
+        Ast.Source ast = new Parser(new Lexer(input).lex()).parseSource();
+        if (expected != null) {
+            Assertions.assertEquals(expected, interpreter.visit(ast).getValue());
+        }
+        else {
+            Assertions.assertThrows(RuntimeException.class, () -> interpreter.visit(ast));
+        }
+        // every scope which was entered was left again
+        Assertions.assertSame(global, interpreter.getScope());
+    }
+
+    static Stream<Arguments> testBlockScope() {
+        return Stream.of(
+                // the nested blocks read and assign the function's y and the
+                // global x
+                Arguments.of("Undeclared Nested Blocks",
+                        "FUN main(): Integer DO LET y: Integer = 2; IF TRUE DO x = x + y; y = y + x; WHILE y < 10 DO y = y + 1; END END RETURN x * 100 + y; END",
+                        BigInteger.valueOf(310)),
+                // the then branch shadows x, and the else branch isn't taken
+                Arguments.of("Declaring Branch Taken",
+                        "FUN main(): Integer DO LET y: Integer = 1; IF TRUE DO LET y: Integer = 2; y = y + 10; x = y; ELSE y = 5; END RETURN y * 100 + x; END",
+                        BigInteger.valueOf(112)),
+                // the else branch doesn't declare, so it assigns the outer y
+                Arguments.of("Other Branch Taken",
+                        "FUN main(): Integer DO LET y: Integer = 1; IF FALSE DO LET y: Integer = 2; ELSE y = 5; END RETURN y; END",
+                        BigInteger.valueOf(5)),
+                Arguments.of("Declaration Doesn't Leak",
+                        "FUN main(): Integer DO IF TRUE DO LET y: Integer = 2; END RETURN y; END",
+                        null),
+                Arguments.of("Declaration In Loop",
+                        "FUN main(): Integer DO LET i: Integer = 0; WHILE i < 3 DO LET j: Integer = i * 2; x = x + j; i = i + 1; END RETURN x; END",
+                        BigInteger.valueOf(7)),
+                Arguments.of("Declaration In Case",
+                        "FUN main(): Integer DO LET y: Integer = 1; SWITCH 1 CASE 1: LET y: Integer = 2; x = y; DEFAULT y = 3; END RETURN y * 100 + x; END",
+                        BigInteger.valueOf(102))
+        );
+    }
+
     @ParameterizedTest
     @MethodSource
     void testLiteralExpression(String test, Ast ast, Object expected) {
         test(ast, expected, new Scope(null));
     }
 
-    private static Stream<Arguments> testLiteralExpression() {
+    static Stream<Arguments> testLiteralExpression() {
         return Stream.of(
                 // NIL
                 Arguments.of("Nil", new Ast.Expression.Literal(null), Environment.NIL.getValue()), //remember, special case
@@ -284,7 +338,9 @@ final class InterpreterTests {
                 // 'c'
                 Arguments.of("Character", new Ast.Expression.Literal('c'), 'c'),
                 // "string"
-                Arguments.of("String", new Ast.Expression.Literal("string"), "string")
+                Arguments.of("String", new Ast.Expression.Literal("string"), "string"),
+                // "literal=null"
+                Arguments.of("String Like Nil", new Ast.Expression.Literal("literal=null"), "literal=null")
         );
     }
 
@@ -294,7 +350,7 @@ final class InterpreterTests {
         test(ast, expected, new Scope(null));
     }
 
-    private static Stream<Arguments> testGroupExpression() {
+    static Stream<Arguments> testGroupExpression() {
         return Stream.of(
                 // (1)
                 Arguments.of("Literal", new Ast.Expression.Group(new Ast.Expression.Literal(BigInteger.ONE)), BigInteger.ONE),
@@ -315,7 +371,7 @@ final class InterpreterTests {
         test(ast, expected, new Scope(null));
     }
 
-    private static Stream<Arguments> testBinaryExpression() {
+    static Stream<Arguments> testBinaryExpression() {
         return Stream.of(
                 // TRUE && FALSE
                Arguments.of("And",
@@ -383,6 +439,42 @@ final class InterpreterTests {
         );
     }
 
+    @ParameterizedTest
+    @MethodSource
+    void testBinaryExpressionError(String test, Ast ast, String message) {
+        RuntimeException exception = Assertions.assertThrows(RuntimeException.class, () -> new Interpreter(new Scope(null)).visit(ast));
+        Assertions.assertEquals(message, exception.getMessage());
+    }
+
+    static Stream<Arguments> testBinaryExpressionError() {
+        return Stream.of(
+                // TRUE + TRUE
+                Arguments.of("Undefined Operator",
+                        new Ast.Expression.Binary("+",
+                                new Ast.Expression.Literal(true),
+                                new Ast.Expression.Literal(true)
+                        ),
+                        "The operator + is not defined for java.lang.Boolean."
+                ),
+                // 1 % 2
+                Arguments.of("Unknown Operator",
+                        new Ast.Expression.Binary("%",
+                                new Ast.Expression.Literal(BigInteger.ONE),
+                                new Ast.Expression.Literal(BigInteger.TWO)
+                        ),
+                        "Unknown binary operator %."
+                ),
+                // 1.0 ^ 2
+                Arguments.of("Power Base",
+                        new Ast.Expression.Binary("^",
+                                new Ast.Expression.Literal(BigDecimal.ONE),
+                                new Ast.Expression.Literal(BigInteger.TWO)
+                        ),
+                        "Expected type java.math.BigInteger, received java.math.BigDecimal."
+                )
+        );
+    }
+
     @ParameterizedTest
     @MethodSource
     void testAccessExpression(String test, Ast ast, Object expected) {
@@ -391,7 +483,7 @@ final class InterpreterTests {
         test(ast, expected, scope);
     }
 
-    private static Stream<Arguments> testAccessExpression() {
+    static Stream<Arguments> testAccessExpression() {
         return Stream.of(
                 // variable
                 Arguments.of("Variable",
@@ -419,7 +511,7 @@ final class InterpreterTests {
         test(ast, expected, scope);
     }
 
-    private static Stream<Arguments> testFunctionExpression() {
+    static Stream<Arguments> testFunctionExpression() {
         return Stream.of(
                 // function()
                 Arguments.of("Function",
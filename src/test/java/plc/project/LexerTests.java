@@ -6,8 +6,20 @@ import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 public class LexerTests {
@@ -102,6 +114,8 @@ public class LexerTests {
                 Arguments.of("Empty", "\"sq\\'dq\\\"bs\\\\\"", true),
                 Arguments.of("Alphabetic", "\"abc\"", true),
                 Arguments.of("Newline Escape", "\"Hello,\\nWorld\"", true),
+                Arguments.of("Single Quote", "\"it's\"", true),
+                Arguments.of("Newline", "\"Hello,\nWorld\"", false),
                 Arguments.of("Unterminated", "\"unterminated", false),
                 Arguments.of("Invalid Escape", "\"invalid\\escape\"", false)
         );
@@ -221,6 +235,305 @@ public class LexerTests {
         Assertions.assertEquals(13, exception.getIndex());
     }
 
+    @Test
+    void testRecoveringMultipleErrors() {
+        Lexer.Result result = new Lexer("x = 'ab' + \"bad\\q\";").lexRecovering();
+        Assertions.assertEquals(Arrays.asList(
+                new Token(Token.Type.IDENTIFIER, "x", 0),
+                new Token(Token.Type.OPERATOR, "=", 2),
+                new Token(Token.Type.ERROR, "'ab'", 4),
+                new Token(Token.Type.OPERATOR, "+", 9),
+                new Token(Token.Type.ERROR, "\"bad\\q\"", 11),
+                new Token(Token.Type.OPERATOR, ";", 18)
+        ), result.getTokens());
+        Assertions.assertTrue(result.hasErrors());
+        Assertions.assertEquals(2, result.getErrors().size());
+        Assertions.assertEquals(6, result.getErrors().get(0).getIndex());
+        Assertions.assertEquals(16, result.getErrors().get(1).getIndex());
+    }
+
+    @Test
+    void testRecoveringUnterminatedString() {
+        // the error token runs to the end of the line, and lexing resumes
+        // on the next one
+        Lexer.Result result = new Lexer("\"unterminated\nz").lexRecovering();
+        Assertions.assertEquals(new Token(Token.Type.ERROR, "\"unterminated", 0), result.getTokens().get(0));
+        Assertions.assertEquals(new Token(Token.Type.IDENTIFIER, "z", 14), result.getTokens().get(result.getTokens().size() - 1));
+        Assertions.assertEquals(1, result.getErrors().size());
+        Assertions.assertEquals(13, result.getErrors().get(0).getIndex());
+    }
+
+    @Test
+    void testRecoveringWithoutErrors() {
+        String input = "LET x = \"it's\";";
+        Lexer.Result result = new Lexer(input).lexRecovering();
+        Assertions.assertFalse(result.hasErrors());
+        Assertions.assertEquals(new Lexer(input).lex(), result.getTokens());
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testCompact(String test, String input) {
+        List<Token> expected;
+        try {
+            expected = new Lexer(input).lex();
+        } catch (ParseException e) {
+            ParseException exception = Assertions.assertThrows(ParseException.class, () -> new Lexer(input).lexCompact());
+            Assertions.assertEquals(e.getIndex(), exception.getIndex());
+            return;
+        }
+        TokenBuffer actual = new Lexer(input).lexCompact();
+        Assertions.assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Token token = expected.get(i);
+            Assertions.assertEquals(token.getType(), actual.getType(i));
+            Assertions.assertEquals(token.getIndex(), actual.getStart(i));
+            Assertions.assertEquals(token.getLength(), actual.getLength(i));
+            Assertions.assertEquals(token.getSymbol(), actual.getSymbol(i));
+            // the literal is only copied out of the input when it's asked for
+            Assertions.assertEquals(token.getLiteral(), actual.getText(i).toString());
+            Assertions.assertTrue(actual.get(i).hasLiteral(token.getLiteral()));
+            Assertions.assertFalse(actual.get(i).hasLiteral(token.getLiteral() + " "));
+            Assertions.assertEquals(token, actual.get(i));
+        }
+    }
+
+    private static Stream<Arguments> testCompact() {
+        return Stream.of(
+                Arguments.of("Empty", ""),
+                Arguments.of("Identifiers", "x = y + xyz + x;"),
+                Arguments.of("Keywords", "LET x = NIL; VAR y = TRUE;"),
+                Arguments.of("Literals", "c = '\\n'; s = \"a \\\"b\\\"\"; d = -1.5; i = 0;"),
+                Arguments.of("Operators", "a != b && c || d == e <= f"),
+                Arguments.of("Whitespace", "  x\n\t=\r\n1  "),
+                Arguments.of("Error", "x = \"unterminated")
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testReader(String test, String input) {
+        List<Token> expected;
+        try {
+            expected = new Lexer(input).lex();
+        } catch (ParseException e) {
+            ParseException exception = Assertions.assertThrows(ParseException.class, () -> new Lexer(new StringReader(input)).lex());
+            Assertions.assertEquals(e.getIndex(), exception.getIndex());
+            return;
+        }
+        Assertions.assertEquals(expected, new Lexer(new StringReader(input)).lex());
+        Assertions.assertEquals(symbols(expected), symbols(new Lexer(new StringReader(input)).lex()));
+        // a reader may return fewer characters than asked for, so the window
+        // fills in several reads
+        Reader trickle = new FilterReader(new StringReader(input)) {
+            @Override
+            public int read(char[] buffer, int offset, int length) throws IOException {
+                return super.read(buffer, offset, Math.min(length, 7));
+            }
+        };
+        Assertions.assertEquals(expected, new Lexer(trickle).lex());
+    }
+
+    private static Stream<Arguments> testReader() {
+        return Stream.of(
+                Arguments.of("Small", "x = \"a b\"; y = 'c';"),
+                Arguments.of("Many Lines", lines(5 * 8192)),
+                // tokens longer than the window, which must grow to hold them
+                Arguments.of("Long String", lines(8000) + "s = \"" + "a b\\\"".repeat(5000) + "\";\n" + lines(8192)),
+                Arguments.of("Long Identifier", lines(8000) + "x" + "y".repeat(20000) + " = 1;\n" + lines(8192)),
+                Arguments.of("Error After Window", lines(3 * 8192) + "s = \"unterminated")
+        );
+    }
+
+    @Test
+    void testMapped() throws IOException {
+        // strings with characters of several bytes in UTF-8
+        String input = lines(3 * 8192) + "s = \"\u00e9t\u00e9 \u65e5\u672c\";\n" + lines(2 * 8192);
+        Path file = Files.createTempFile("lexer", ".plc");
+        try {
+            Files.writeString(file, input, StandardCharsets.UTF_8);
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                Assertions.assertEquals(new Lexer(input).lex(), Lexer.map(channel, StandardCharsets.UTF_8).lex());
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    // lines of assorted tokens, of at least the given length altogether
+    private static String lines(int length) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; builder.length() < length; i++) {
+            builder.append("name").append(i).append(" = \"value ").append(i).append("\\n\" + 'c' - 1.").append(i).append(";\n");
+        }
+        return builder.toString();
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testIncremental(String test, String input, int offset, int removed, String inserted) {
+        IncrementalLexer lexer = new IncrementalLexer(input);
+        lexer.edit(offset, removed, inserted);
+        assertRelexed(lexer);
+    }
+
+    private static Stream<Arguments> testIncremental() {
+        return Stream.of(
+                Arguments.of("Insert At Start", "x = 1;", 0, 0, "y "),
+                Arguments.of("Insert At End", "x = 1", 5, 0, ";"),
+                Arguments.of("Delete At Start", "abc = 1;", 0, 1, ""),
+                Arguments.of("Delete At End", "x = 1;", 5, 1, ""),
+                Arguments.of("Replace", "x = 1 + y;", 4, 1, "22"),
+                Arguments.of("Replace All", "x", 0, 1, "y = z;"),
+                // "a b" to "a c d"
+                Arguments.of("Inside String", "x = \"a b\"; y", 7, 1, "c d"),
+                // "a b" to "a" + " b"
+                Arguments.of("Split String", "s = \"a b\";", 6, 0, "\" + \""),
+                // "a" + " b" to "a b"
+                Arguments.of("Merge Strings", "s = \"a\" + \" b\";", 6, 5, ""),
+                // 'a' to '\n'
+                Arguments.of("Inside Character", "c = 'a';", 5, 1, "\\n"),
+                Arguments.of("Merge Identifiers", "ab cd", 2, 1, ""),
+                Arguments.of("Split Identifier", "abcd", 2, 0, " "),
+                Arguments.of("Extend Integer", "x = 1;", 5, 0, ".5"),
+                Arguments.of("Extend Operator", "a = b;", 3, 0, "="),
+                // the minus becomes part of the number after it
+                Arguments.of("Merge Negative", "x = - 1;", 5, 1, "")
+        );
+    }
+
+    @Test
+    void testIncrementalError() {
+        IncrementalLexer lexer = new IncrementalLexer("x = \"a\";");
+        ParseException exception = Assertions.assertThrows(ParseException.class, () -> lexer.edit(6, 1, ""));
+        Assertions.assertEquals(7, exception.getIndex());
+        Assertions.assertEquals("x = \"a;", lexer.getSource());
+        // the next edit lexes the whole source again
+        lexer.edit(6, 0, "\"");
+        assertRelexed(lexer);
+    }
+
+    @Test
+    void testIncrementalRandom() {
+        String[] pieces = {"", " ", "\n", "x", "abc", "VAR", "1", "2.5", "-", "+", "==", ";", "\"s t\"", "'c'", "\"", "'", "\\"};
+        Random random = new Random(5);
+        String source = "VAR x = \"a b\"; y = 'c' + 1.5;";
+        IncrementalLexer lexer = new IncrementalLexer(source);
+        for (int i = 0; i < 2000; i++) {
+            int offset = random.nextInt(source.length() + 1);
+            int removed = random.nextInt(Math.min(source.length() - offset, source.length() > 100 ? 8 : 3) + 1);
+            String inserted = pieces[random.nextInt(pieces.length)];
+            String edited = source.substring(0, offset) + inserted + source.substring(offset + removed);
+            Integer expected = errorIndex(() -> new Lexer(edited).lex());
+            Integer actual = errorIndex(() -> lexer.edit(offset, removed, inserted));
+            Assertions.assertEquals(expected, actual, edited);
+            source = edited;
+            if (actual == null) {
+                assertRelexed(lexer);
+            }
+        }
+    }
+
+    @Test
+    void testIncrementalSymbols() {
+        IncrementalLexer lexer = new IncrementalLexer("LET x = y;");
+        int limit = 2 * lexer.getSymbols().size() + 256;
+        for (int i = 0; i < 2000; i++) {
+            // renames x, interning a new name each time
+            lexer.edit(4, lexer.getTokens().getLength(1), "x" + i);
+            Assertions.assertTrue(lexer.getSymbols().size() <= limit + 1, "Interned " + lexer.getSymbols().size() + " names.");
+        }
+        assertRelexed(lexer);
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testParallel(String test, String input) {
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            List<Token> expected;
+            try {
+                expected = new Lexer(input).lex();
+            } catch (ParseException e) {
+                ParseException exception = Assertions.assertThrows(ParseException.class, () -> new Lexer(input).lexParallel(pool));
+                Assertions.assertEquals(e.getIndex(), exception.getIndex());
+                Assertions.assertEquals(e.getMessage(), exception.getMessage());
+                return;
+            }
+            List<Token> actual = new Lexer(input).lexParallel(pool);
+            Assertions.assertEquals(expected, actual);
+            Assertions.assertEquals(symbols(expected), symbols(actual));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static Stream<Arguments> testParallel() {
+        return Stream.of(
+                Arguments.of("Smaller Than Chunk", "x = y;\nz = \"a b\";\n"),
+                Arguments.of("No Newlines", "x = y; ".repeat(Lexer.CHUNK / 3)),
+                // the first chunk would end at each of these characters if it
+                // didn't run on to the next newline
+                Arguments.of("Inside String", chunked("", "\"a b c\"", 3, "")),
+                Arguments.of("Inside Escape", chunked("", "\"a\\\"b\"", 2, "")),
+                Arguments.of("Inside Character", chunked("", "'c'", 1, "")),
+                Arguments.of("Inside Escaped Character", chunked("", "'\\''", 1, "")),
+                Arguments.of("Inside Identifier", chunked("", "abcdef", 2, "")),
+                Arguments.of("Inside Decimal", chunked("", "12.5", 2, "")),
+                // the same names are used in every chunk, and some only later
+                Arguments.of("Symbols", chunked("a = b;\n", "c", 0, "d = a + b + c;\n")),
+                Arguments.of("Error In Later Chunk", chunked("", "\"a\"", 1, "s = \"unterminated\n")),
+                Arguments.of("Errors In Both Chunks", chunked("c = 'ab';\n", "\"a\"", 1, "s = \"unterminated\n")),
+                Arguments.of("Error Across Split", chunked("", "\"a\\qb\"", 2, "s = \"unterminated\n"))
+        );
+    }
+
+    /**
+     * Returns a source of several chunks for the parallel lexer, starting with
+     * the first line and ending with the last, in which the character at the
+     * given index of the token is where the first chunk would end.
+     */
+    private static String chunked(String first, String token, int at, String last) {
+        StringBuilder builder = new StringBuilder(first);
+        int line = Lexer.CHUNK - 1 - at - "s = ".length();
+        while (builder.length() + 11 <= line) {
+            builder.append("x = y + 1;\n");
+        }
+        builder.append(" ".repeat(line - builder.length())).append("s = ").append(token).append(";\n");
+        while (builder.length() < 2 * Lexer.CHUNK + Lexer.CHUNK / 2) {
+            builder.append("x = y + 1;\n");
+        }
+        return builder.append(last).toString();
+    }
+
+    private static List<Integer> symbols(List<Token> tokens) {
+        return tokens.stream().map(Token::getSymbol).collect(Collectors.toList());
+    }
+
+    /**
+     * Asserts the incremental lexer's tokens are those of lexing its source
+     * in full, and that their symbols are in its current table.
+     */
+    private static void assertRelexed(IncrementalLexer lexer) {
+        TokenBuffer tokens = lexer.getTokens();
+        Assertions.assertEquals(new Lexer(lexer.getSource()).lex(), tokens);
+        for (int i = 0; i < tokens.size(); i++) {
+            if (tokens.getType(i) == Token.Type.IDENTIFIER) {
+                Assertions.assertEquals(tokens.get(i).getLiteral(), lexer.getSymbols().getName(tokens.getSymbol(i)));
+            }
+        }
+    }
+
+    // the index of the error the lexing failed with, or null if it didn't
+    private static Integer errorIndex(Runnable lex) {
+        try {
+            lex.run();
+            return null;
+        } catch (ParseException e) {
+            return e.getIndex();
+        }
+    }
+
     /**
      * Tests that lexing the input through {@link Lexer#lexToken()} produces a
      * single token with the expected type and literal matching the input.
@@ -0,0 +1,79 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.stream.Stream;
+
+/**
+ * Tests the {@link Operators} on the {@code Long}s which compiled code keeps
+ * integers as, which must give the same results as {@code BigInteger}s. The
+ * expected values are compared with their classes, so a result which should
+ * have stayed a {@code Long}, or become a {@code BigInteger}, fails. An
+ * operation which fails is expected to fail with the given message.
+ */
+final class OperatorsTests {
+
+    private static final BigInteger ABOVE_MAX = BigInteger.valueOf(Long.MAX_VALUE).add(BigInteger.ONE);
+    private static final BigInteger BELOW_MIN = BigInteger.valueOf(Long.MIN_VALUE).subtract(BigInteger.ONE);
+
+    @ParameterizedTest
+    @MethodSource
+    void testOperator(String test, String operator, Object left, Object right, Object expected) {
+        Assertions.assertEquals(expected, apply(operator, left, right));
+    }
+
+    static Stream<Arguments> testOperator() {
+        return Stream.of(
+                Arguments.of("Add", "+", 1L, 2L, 3L),
+                Arguments.of("Add Max", "+", Long.MAX_VALUE - 1, 1L, Long.MAX_VALUE),
+                Arguments.of("Add Overflow", "+", Long.MAX_VALUE, 1L, ABOVE_MAX),
+                Arguments.of("Add Underflow", "+", Long.MIN_VALUE, -1L, BELOW_MIN),
+                Arguments.of("Subtract Min", "-", Long.MIN_VALUE + 1, 1L, Long.MIN_VALUE),
+                Arguments.of("Subtract Underflow", "-", Long.MIN_VALUE, 1L, BELOW_MIN),
+                Arguments.of("Subtract Overflow", "-", Long.MAX_VALUE, -1L, ABOVE_MAX),
+                Arguments.of("Multiply Overflow", "*", Long.MAX_VALUE, 2L, BigInteger.valueOf(Long.MAX_VALUE).multiply(BigInteger.TWO)),
+                Arguments.of("Multiply Min By Negative One", "*", Long.MIN_VALUE, -1L, ABOVE_MAX),
+                Arguments.of("Divide", "/", 7L, 2L, 3L),
+                Arguments.of("Divide Negative", "/", -7L, 2L, -3L),
+                Arguments.of("Divide Min By One", "/", Long.MIN_VALUE, 1L, Long.MIN_VALUE),
+                Arguments.of("Divide Min By Negative One", "/", Long.MIN_VALUE, -1L, ABOVE_MAX),
+                Arguments.of("Divide By Zero", "/", 1L, 0L, "Cannot divide by zero"),
+                // an overflowed result is narrowed again once it fits
+                Arguments.of("Back Into Range", "-", ABOVE_MAX, 1L, Long.MAX_VALUE),
+                Arguments.of("Big Operands", "+", BigInteger.ONE, BigInteger.ONE, BigInteger.TWO),
+                Arguments.of("Power", "^", 2L, 63L, ABOVE_MAX),
+                Arguments.of("Equal Long And BigInteger", "==", 5L, BigInteger.valueOf(5), true),
+                Arguments.of("Equal BigInteger And Long", "==", BigInteger.valueOf(5), 5L, true),
+                Arguments.of("Equal Overflowed", "==", ABOVE_MAX, Long.MAX_VALUE, false),
+                Arguments.of("Not Equal Long And BigInteger", "!=", 5L, BigInteger.valueOf(6), true),
+                Arguments.of("Equal Long And Decimal", "==", 5L, new BigDecimal("5"), false),
+                Arguments.of("Less Than Overflowed", "<", Long.MAX_VALUE, ABOVE_MAX, true),
+                Arguments.of("Greater Than Long", ">", ABOVE_MAX, Long.MAX_VALUE, true),
+                Arguments.of("Mixed Types", "+", 1L, new BigDecimal("1.0"), "Both expressions must be of the same class type")
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("testOperator")
+    void testOperatorBig(String test, String operator, Object left, Object right, Object expected) {
+        // the same operation on BigIntegers gives the same value, without
+        // ever narrowing it
+        Object value = Operators.widen(expected);
+        Assertions.assertEquals(value, apply(operator, Operators.widen(left), Operators.widen(right)));
+    }
+
+    // the result of an operator, or the message of the error it failed with
+    private static Object apply(String operator, Object left, Object right) {
+        try {
+            return Operators.apply(operator, left, right);
+        } catch (RuntimeException e) {
+            return e.getMessage();
+        }
+    }
+
+}
@@ -255,6 +255,98 @@ final class ParserExpressionTests {
         );
     }
 
+    @ParameterizedTest
+    @MethodSource
+    void testPrecedence(String test, String input, Ast.Expression expected) {
+        Assertions.assertEquals(expected, new Parser(new Lexer(input).lex()).parseExpression());
+    }
+
+    private static Stream<Arguments> testPrecedence() {
+        return Stream.of(
+                // operators of equal precedence associate to the left
+                Arguments.of("Subtraction", "a - b - c", binary("-", binary("-", access("a"), access("b")), access("c"))),
+                Arguments.of("Division", "a / b / c", binary("/", binary("/", access("a"), access("b")), access("c"))),
+                Arguments.of("Addition And Subtraction", "a - b + c", binary("+", binary("-", access("a"), access("b")), access("c"))),
+                Arguments.of("Logical", "a || b && c", binary("&&", binary("||", access("a"), access("b")), access("c"))),
+                Arguments.of("Comparison", "a < b == c", binary("==", binary("<", access("a"), access("b")), access("c"))),
+                // ^ has the same precedence as * and /
+                Arguments.of("Power Then Multiply", "a ^ b * c", binary("*", binary("^", access("a"), access("b")), access("c"))),
+                Arguments.of("Multiply Then Power", "a * b ^ c", binary("^", binary("*", access("a"), access("b")), access("c"))),
+                Arguments.of("Divide Then Power", "a / b ^ c", binary("^", binary("/", access("a"), access("b")), access("c"))),
+                Arguments.of("Power Then Add", "a ^ b + c", binary("+", binary("^", access("a"), access("b")), access("c"))),
+                Arguments.of("Add Then Power", "a + b ^ c", binary("+", access("a"), binary("^", access("b"), access("c")))),
+                // tighter operators bind first on either side
+                Arguments.of("Mixed", "a && b < c + d * e",
+                        binary("&&", access("a"), binary("<", access("b"), binary("+", access("c"), binary("*", access("d"), access("e")))))),
+                Arguments.of("Mixed Descending", "a * b + c < d && e",
+                        binary("&&", binary("<", binary("+", binary("*", access("a"), access("b")), access("c")), access("d")), access("e")))
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testDeepNesting(String test, String open, String close, int nodes) {
+        // deep enough to overflow the stack if each level recursed
+        int depth = 10_000;
+        String input = open.repeat(depth) + "x" + close.repeat(depth);
+        Ast.Expression expression = new Parser(new Lexer(input).lex()).parseExpression();
+        // unwraps the nodes of each level down to the x inside them all
+        int count = 0;
+        while (!(expression instanceof Ast.Expression.Access) || ((Ast.Expression.Access) expression).getOffset().isPresent()) {
+            if (expression instanceof Ast.Expression.Group) {
+                expression = ((Ast.Expression.Group) expression).getExpression();
+            }
+            else if (expression instanceof Ast.Expression.Function) {
+                expression = ((Ast.Expression.Function) expression).getArguments().get(0);
+            }
+            else if (expression instanceof Ast.Expression.Access) {
+                expression = ((Ast.Expression.Access) expression).getOffset().get();
+            }
+            else {
+                expression = ((Ast.Expression.Binary) expression).getRight();
+            }
+            count++;
+        }
+        Assertions.assertEquals("x", ((Ast.Expression.Access) expression).getName());
+        Assertions.assertEquals(depth * nodes, count);
+    }
+
+    private static Stream<Arguments> testDeepNesting() {
+        return Stream.of(
+                Arguments.of("Groups", "(", ")", 1),
+                Arguments.of("Calls", "f(", ")", 1),
+                Arguments.of("Offsets", "x[", "]", 1),
+                // a group around a sum at each level
+                Arguments.of("Grouped Operands", "(1 + ", ")", 2)
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testUnclosed(String test, String input, String message, int index) {
+        ParseException exception = Assertions.assertThrows(ParseException.class, () -> new Parser(new Lexer(input).lex()).parseExpression());
+        Assertions.assertEquals(message, exception.getMessage());
+        Assertions.assertEquals(index, exception.getIndex());
+    }
+
+    private static Stream<Arguments> testUnclosed() {
+        return Stream.of(
+                // these used to parse as a bare access of the name
+                Arguments.of("Call", "f(a, b", "Missing closing parenthesis ", 5),
+                Arguments.of("Call Missing Comma", "f(a b)", "Missing closing parenthesis ", 3),
+                Arguments.of("Offset", "x[1", "Should be a closed bracket ", 3),
+                Arguments.of("Group", "(a + b", "Must close open parenthesis with a closed parenthesis", 4)
+        );
+    }
+
+    private static Ast.Expression.Access access(String name) {
+        return new Ast.Expression.Access(Optional.empty(), name);
+    }
+
+    private static Ast.Expression.Binary binary(String operator, Ast.Expression left, Ast.Expression right) {
+        return new Ast.Expression.Binary(operator, left, right);
+    }
+
     /**
      * Standard test function. If expected is null, a ParseException is expected
      * to be thrown (not used in the provided tests).
@@ -7,11 +7,14 @@ import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 
 import java.math.BigDecimal;
+import java.lang.reflect.Method;
 import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
 import java.util.function.Function;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 /**
@@ -28,7 +31,7 @@ final class ParserTests {
         test(tokens, expected, Parser::parseSource);
     }
 
-    private static Stream<Arguments> testSource() {
+    static Stream<Arguments> testSource() {
         return Stream.of(
                 Arguments.of("List - Singular",
                         Arrays.asList(
@@ -98,7 +101,7 @@ final class ParserTests {
         test(tokens, expected, Parser::parseStatement);
     }
 
-    private static Stream<Arguments> testExpressionStatement() {
+    static Stream<Arguments> testExpressionStatement() {
         return Stream.of(
                 Arguments.of("Function Expression",
                         Arrays.asList(
@@ -119,7 +122,7 @@ final class ParserTests {
         test(tokens, expected, Parser::parseStatement);
     }
 
-    private static Stream<Arguments> testDeclarationStatement() {
+    static Stream<Arguments> testDeclarationStatement() {
         return Stream.of(
                 Arguments.of("Definition",
                         Arrays.asList(
@@ -152,7 +155,7 @@ final class ParserTests {
         test(tokens, expected, Parser::parseStatement);
     }
 
-    private static Stream<Arguments> testAssignmentStatement() {
+    static Stream<Arguments> testAssignmentStatement() {
         return Stream.of(
                 Arguments.of("Assignment",
                         Arrays.asList(
@@ -177,7 +180,7 @@ final class ParserTests {
         test(tokens, expected, Parser::parseStatement);
     }
 
-    private static Stream<Arguments> testIfStatement() {
+    static Stream<Arguments> testIfStatement() {
         return Stream.of(
                 Arguments.of("If",
                         Arrays.asList(
@@ -223,7 +226,7 @@ final class ParserTests {
         test(tokens, expected, Parser::parseStatement);
     }
 
-    private static Stream<Arguments> testWhileStatement() {
+    static Stream<Arguments> testWhileStatement() {
         return Stream.of(
                 Arguments.of("While",
                         Arrays.asList(
@@ -249,7 +252,7 @@ final class ParserTests {
         test(tokens, expected, Parser::parseStatement);
     }
 
-    private static Stream<Arguments> testReturnStatement() {
+    static Stream<Arguments> testReturnStatement() {
         return Stream.of(
                 Arguments.of("Return Statement",
                         Arrays.asList(
@@ -269,7 +272,7 @@ final class ParserTests {
         test(tokens, expected, Parser::parseExpression);
     }
 
-    private static Stream<Arguments> testLiteralExpression() {
+    static Stream<Arguments> testLiteralExpression() {
         return Stream.of(
                 Arguments.of("Boolean Literal",
                         Arrays.asList(new Token(Token.Type.IDENTIFIER, "TRUE", 0)),
@@ -304,7 +307,7 @@ final class ParserTests {
         test(tokens, expected, Parser::parseExpression);
     }
 
-    private static Stream<Arguments> testGroupExpression() {
+    static Stream<Arguments> testGroupExpression() {
         return Stream.of(
                 Arguments.of("Grouped Variable",
                         Arrays.asList(
@@ -338,7 +341,7 @@ final class ParserTests {
         test(tokens, expected, Parser::parseExpression);
     }
 
-    private static Stream<Arguments> testBinaryExpression() {
+    static Stream<Arguments> testBinaryExpression() {
         return Stream.of(
                 Arguments.of("Binary And",
                         Arrays.asList(
@@ -397,7 +400,7 @@ final class ParserTests {
         test(tokens, expected, Parser::parseExpression);
     }
 
-    private static Stream<Arguments> testAccessExpression() {
+    static Stream<Arguments> testAccessExpression() {
         return Stream.of(
                 Arguments.of("Variable",
                         Arrays.asList(new Token(Token.Type.IDENTIFIER, "name", 0)),
@@ -422,7 +425,7 @@ final class ParserTests {
         test(tokens, expected, Parser::parseExpression);
     }
 
-    private static Stream<Arguments> testFunctionExpression() {
+    static Stream<Arguments> testFunctionExpression() {
         return Stream.of(
                 Arguments.of("Zero Arguments",
                         Arrays.asList(
@@ -533,6 +536,236 @@ final class ParserTests {
         test(input, expected, Parser::parseSource);
     }
 
+    @ParameterizedTest
+    @MethodSource
+    void testProgram(String test, String input, Ast.Source expected) {
+        Assertions.assertEquals(expected, new Parser(new Lexer(input).lex()).parseSource());
+    }
+
+    static Stream<Arguments> testProgram() {
+        return Stream.of(
+                Arguments.of("Function Parameters",
+                        "FUN f(a: Integer, b: Decimal) DO END",
+                        new Ast.Source(Arrays.asList(), Arrays.asList(
+                                new Ast.Function("f", Arrays.asList("a", "b"), Arrays.asList("Integer", "Decimal"), Optional.empty(), Arrays.asList())
+                        ))
+                ),
+                // both statements consume their semicolons
+                Arguments.of("Declaration And Return",
+                        "FUN f(): Integer DO LET x: Integer = 1; LET y; RETURN x; END",
+                        new Ast.Source(Arrays.asList(), Arrays.asList(
+                                new Ast.Function("f", Arrays.asList(), Arrays.asList(), Optional.of("Integer"), Arrays.asList(
+                                        new Ast.Statement.Declaration("x", Optional.of("Integer"), Optional.of(new Ast.Expression.Literal(BigInteger.ONE))),
+                                        new Ast.Statement.Declaration("y", Optional.empty(), Optional.empty()),
+                                        new Ast.Statement.Return(new Ast.Expression.Access(Optional.empty(), "x"))
+                                ))
+                        ))
+                ),
+                // each statement consumes its END, so the next one parses
+                Arguments.of("Block Ends",
+                        "FUN f() DO IF TRUE DO END WHILE FALSE DO END SWITCH x DEFAULT END RETURN 1; END",
+                        new Ast.Source(Arrays.asList(), Arrays.asList(
+                                new Ast.Function("f", Arrays.asList(), Arrays.asList(), Optional.empty(), Arrays.asList(
+                                        new Ast.Statement.If(new Ast.Expression.Literal(true), Arrays.asList(), Arrays.asList()),
+                                        new Ast.Statement.While(new Ast.Expression.Literal(false), Arrays.asList()),
+                                        new Ast.Statement.Switch(new Ast.Expression.Access(Optional.empty(), "x"), Arrays.asList(
+                                                new Ast.Statement.Case(Optional.empty(), Arrays.asList())
+                                        )),
+                                        new Ast.Statement.Return(new Ast.Expression.Literal(BigInteger.ONE))
+                                ))
+                        ))
+                ),
+                Arguments.of("Case Value And Default",
+                        "FUN f() DO SWITCH x CASE 1: y = 1; DEFAULT y = 2; END END",
+                        new Ast.Source(Arrays.asList(), Arrays.asList(
+                                new Ast.Function("f", Arrays.asList(), Arrays.asList(), Optional.empty(), Arrays.asList(
+                                        new Ast.Statement.Switch(new Ast.Expression.Access(Optional.empty(), "x"), Arrays.asList(
+                                                new Ast.Statement.Case(Optional.of(new Ast.Expression.Literal(BigInteger.ONE)), Arrays.asList(
+                                                        new Ast.Statement.Assignment(new Ast.Expression.Access(Optional.empty(), "y"), new Ast.Expression.Literal(BigInteger.ONE))
+                                                )),
+                                                new Ast.Statement.Case(Optional.empty(), Arrays.asList(
+                                                        new Ast.Statement.Assignment(new Ast.Expression.Access(Optional.empty(), "y"), new Ast.Expression.Literal(BigInteger.valueOf(2)))
+                                                ))
+                                        ))
+                                ))
+                        ))
+                ),
+                Arguments.of("Global Without Value",
+                        "VAR x: Integer; VAR y: Integer = 1;",
+                        new Ast.Source(Arrays.asList(
+                                new Ast.Global("x", "Integer", true, Optional.empty()),
+                                new Ast.Global("y", "Integer", true, Optional.of(new Ast.Expression.Literal(BigInteger.ONE)))
+                        ), Arrays.asList())
+                )
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testMissingToken(String test, String input, int index) {
+        // the input ends early, which is a ParseException at its end rather
+        // than reading past the last token
+        ParseException exception = Assertions.assertThrows(ParseException.class, () -> new Parser(new Lexer(input).lex()).parseSource());
+        Assertions.assertEquals(index, exception.getIndex());
+    }
+
+    private static Stream<Arguments> testMissingToken() {
+        return Stream.of(
+                Arguments.of("Parameter", "FUN f(a:", 5),
+                Arguments.of("Global Value", "VAR x: Integer =", 5),
+                Arguments.of("Declaration", "FUN f() DO LET x", 7),
+                Arguments.of("Block", "FUN f() DO IF TRUE DO", 8),
+                Arguments.of("Case", "FUN f() DO SWITCH x CASE 1", 9)
+        );
+    }
+
+    @Test
+    void testPeekPatterns() throws ReflectiveOperationException {
+        // no parse method uses the varargs peek any more, but it's kept from
+        // the original skeleton, so its string patterns are checked here
+        Parser parser = new Parser(new Lexer("x = 1").lex());
+        Method peek = Parser.class.getDeclaredMethod("peek", Object[].class);
+        peek.setAccessible(true);
+        Assertions.assertEquals(true, peek.invoke(parser, (Object) new Object[] {"x", "="}));
+        Assertions.assertEquals(true, peek.invoke(parser, (Object) new Object[] {Token.Type.IDENTIFIER, "=", Token.Type.INTEGER}));
+        Assertions.assertEquals(false, peek.invoke(parser, (Object) new Object[] {"x", "+"}));
+        Assertions.assertEquals(false, peek.invoke(new Parser(new Lexer("x =").lex()), (Object) new Object[] {"x", "=", "1"}));
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testIncremental(String test, int offset, int removed, String inserted, boolean reused) {
+        // VAR x: Integer = 1; FUN f(): Integer DO RETURN x; END FUN g(): Integer DO RETURN 2; END
+        IncrementalParser parser = new IncrementalParser("VAR x: Integer = 1; FUN f(): Integer DO RETURN x; END FUN g(): Integer DO RETURN 2; END");
+        List<Ast> before = declarations(parser.getAst());
+        List<Ast> after = declarations(parser.edit(offset, removed, inserted));
+        Assertions.assertEquals(new Parser(new Lexer(parser.getSource()).lex()).parseSource(), parser.getAst());
+        // a declaration the edit didn't touch is kept if only the edited one
+        // was parsed again, and is new after a full parse
+        for (int i = 0; i < Math.min(before.size(), after.size()); i++) {
+            if (before.get(i).equals(after.get(i))) {
+                Assertions.assertEquals(reused, before.get(i) == after.get(i), "Declaration " + i + ".");
+            }
+        }
+    }
+
+    private static Stream<Arguments> testIncremental() {
+        return Stream.of(
+                Arguments.of("Inside Global", 17, 1, "5", true),
+                Arguments.of("Inside Function", 81, 1, "3", true),
+                Arguments.of("Grow Function", 40, 0, "LET y: Integer = x; ", true),
+                // FUN f(): Integer DO RETURN 2; END
+                Arguments.of("Across Declarations", 47, 34, "", false),
+                // the edited function is followed by a new one, so it no
+                // longer ends where it did
+                Arguments.of("New Declaration", 54, 0, "FUN h() DO END ", false)
+        );
+    }
+
+    @Test
+    void testRecoveringStatement() {
+        // FUN main() DO x = ; y = 1; END
+        Parser.Result result = recover("FUN main() DO x = ; y = 1; END");
+        Assertions.assertEquals(new Ast.Source(
+                Arrays.asList(),
+                Arrays.asList(new Ast.Function("main", Arrays.asList(), Arrays.asList(), Optional.empty(), Arrays.asList(
+                        new Ast.Statement.Assignment(
+                                new Ast.Expression.Access(Optional.empty(), "y"),
+                                new Ast.Expression.Literal(BigInteger.ONE)
+                        )
+                )))
+        ), result.getSource());
+        Assertions.assertEquals(Arrays.asList(7), indices(result));
+    }
+
+    @Test
+    void testRecoveringBlockEnd() {
+        // FUN main() DO IF x DO y = ; ELSE z = 1; END END
+        Parser.Result result = recover("FUN main() DO IF x DO y = ; ELSE z = 1; END END");
+        Assertions.assertEquals(new Ast.Source(
+                Arrays.asList(),
+                Arrays.asList(new Ast.Function("main", Arrays.asList(), Arrays.asList(), Optional.empty(), Arrays.asList(
+                        new Ast.Statement.If(
+                                new Ast.Expression.Access(Optional.empty(), "x"),
+                                Arrays.asList(),
+                                Arrays.asList(new Ast.Statement.Assignment(
+                                        new Ast.Expression.Access(Optional.empty(), "z"),
+                                        new Ast.Expression.Literal(BigInteger.ONE)
+                                ))
+                        )
+                )))
+        ), result.getSource());
+        Assertions.assertEquals(Arrays.asList(10), indices(result));
+    }
+
+    @Test
+    void testRecoveringMissingSemicolon() {
+        // FUN main() DO x = 1 END FUN f() DO END
+        Parser.Result result = recover("FUN main() DO x = 1 END FUN f() DO END");
+        Assertions.assertEquals(new Ast.Source(
+                Arrays.asList(),
+                Arrays.asList(
+                        new Ast.Function("main", Arrays.asList(), Arrays.asList(), Optional.empty(), Arrays.asList()),
+                        new Ast.Function("f", Arrays.asList(), Arrays.asList(), Optional.empty(), Arrays.asList())
+                )
+        ), result.getSource());
+        Assertions.assertEquals(Arrays.asList(8), indices(result));
+    }
+
+    @Test
+    void testRecoveringFunction() {
+        // FUN f( DO END FUN main() DO RETURN 1; END
+        Parser.Result result = recover("FUN f( DO END FUN main() DO RETURN 1; END");
+        Assertions.assertEquals(new Ast.Source(
+                Arrays.asList(),
+                Arrays.asList(new Ast.Function("main", Arrays.asList(), Arrays.asList(), Optional.empty(), Arrays.asList(
+                        new Ast.Statement.Return(new Ast.Expression.Literal(BigInteger.ONE))
+                )))
+        ), result.getSource());
+        Assertions.assertEquals(Arrays.asList(4), indices(result));
+    }
+
+    @Test
+    void testRecoveringGlobals() {
+        // VAR = 1; VAL y: Integer = 2; LIST l: Integer = [1]; VAR z = 3; FUN main() DO END
+        Parser.Result result = recover("VAR = 1; VAL y: Integer = 2; LIST l: Integer = [1]; VAR z = 3; FUN main() DO END");
+        List<String> globals = result.getSource().getGlobals().stream().map(Ast.Global::getName).collect(Collectors.toList());
+        Assertions.assertEquals(Arrays.asList("y", "l"), globals);
+        Assertions.assertEquals(1, result.getSource().getFunctions().size());
+        Assertions.assertEquals(Arrays.asList(1, 22), indices(result));
+    }
+
+    @Test
+    void testRecoveringErrorList() {
+        Parser.Result result = recover("VAR x: Integer = ; FUN main() DO a = ; b = ; END FUN f() DO c = 1 END");
+        Assertions.assertTrue(result.hasErrors());
+        Assertions.assertEquals(Arrays.asList(5, 13, 16, 26), indices(result));
+        Assertions.assertEquals(Arrays.asList("main", "f"), result.getSource().getFunctions().stream().map(Ast.Function::getName).collect(Collectors.toList()));
+    }
+
+    @Test
+    void testRecoveringWithoutErrors() {
+        String input = "VAR x: Integer = 1; FUN main(): Integer DO LET y: Integer = x; RETURN y; END";
+        Parser.Result result = recover(input);
+        Assertions.assertFalse(result.hasErrors());
+        Assertions.assertEquals(new Parser(new Lexer(input).lex()).parseSource(), result.getSource());
+    }
+
+    private static Parser.Result recover(String input) {
+        return new Parser(new Lexer(input).lex()).parseRecovering();
+    }
+
+    private static List<Integer> indices(Parser.Result result) {
+        return result.getErrors().stream().map(ParseException::getIndex).collect(Collectors.toList());
+    }
+
+    // the globals and then the functions of the source
+    private static List<Ast> declarations(Ast.Source source) {
+        List<Ast> declarations = new ArrayList<>(source.getGlobals());
+        declarations.addAll(source.getFunctions());
+        return declarations;
+    }
+
     /**
      * Standard test function. If expected is null, a ParseException is expected
      * to be thrown (not used in the provided tests).
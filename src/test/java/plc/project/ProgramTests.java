@@ -0,0 +1,73 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests that runs of one {@link Program} are independent, including when
+ * they run at the same time on several threads.
+ */
+final class ProgramTests {
+
+    // the input of the run on each thread, which the input function returns
+    private static final ThreadLocal<BigInteger> INPUT = new ThreadLocal<>();
+
+    // sums 1 to the input in a global, so runs sharing globals would see
+    // each other's totals
+    private static final String SUM = "VAR n: Integer = input(); VAR total: Integer = 0; "
+            + "FUN main(): Integer DO LET i: Integer = 0; WHILE i < n DO i = i + 1; total = total + i; END RETURN total; END";
+
+    @Test
+    void testFreshGlobals() {
+        Program program = program();
+        INPUT.set(BigInteger.valueOf(100));
+        try {
+            Assertions.assertEquals(BigInteger.valueOf(5050), program.run().getValue());
+            // the total starts from zero again
+            Assertions.assertEquals(BigInteger.valueOf(5050), program.run().getValue());
+        } finally {
+            INPUT.remove();
+        }
+    }
+
+    @Test
+    void testConcurrentRuns() throws Exception {
+        Program program = program();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Object>> results = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                BigInteger input = BigInteger.valueOf(1000 + i);
+                results.add(executor.submit(() -> {
+                    INPUT.set(input);
+                    start.await();
+                    return program.run().getValue();
+                }));
+            }
+            start.countDown();
+            for (int i = 0; i < results.size(); i++) {
+                long n = 1000 + i;
+                Assertions.assertEquals(BigInteger.valueOf(n * (n + 1) / 2), results.get(i).get(2, TimeUnit.SECONDS), "Run " + i + ".");
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static Program program() {
+        Scope library = Program.standardLibrary();
+        library.defineFunction("input", 0, arguments -> Environment.create(INPUT.get()));
+        return new Program(new Parser(new Lexer(SUM).lex()).parseSource(), library);
+    }
+
+}
@@ -0,0 +1,83 @@
+package plc.project;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A manual load test for the {@link ScriptService}, which isn't a JUnit test
+ * and so is never run by the test suite; {@link ScriptServiceTests} covers
+ * its behavior. It keeps a number of scripts in flight, drawn from a set of
+ * distinct sources, and reports the throughput and latency percentiles. Run
+ * it by hand once the tests are compiled:
+ *
+ * <pre>
+ * java -cp build/classes/java/main:build/classes/java/test plc.project.ScriptServiceLoad [scripts] [sources] [in flight] [threads]
+ * </pre>
+ */
+public final class ScriptServiceLoad {
+
+    public static void main(String[] args) throws InterruptedException {
+        int scripts = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int sources = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        int inFlight = args.length > 2 ? Integer.parseInt(args[2]) : 64;
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+        String[] programs = new String[sources];
+        for (int i = 0; i < sources; i++) {
+            programs[i] = source(i);
+        }
+        try (ScriptService service = new ScriptService(threads, Duration.ofSeconds(1))) {
+            // warm up, which also compiles every source
+            run(service, programs, scripts / 10, inFlight);
+            long[] latencies = new long[scripts];
+            long start = System.nanoTime();
+            int failures = run(service, programs, latencies, inFlight);
+            long elapsed = System.nanoTime() - start;
+            Arrays.sort(latencies);
+            System.out.printf("%d scripts, %d sources, %d in flight, %d threads%n", scripts, sources, inFlight, threads);
+            System.out.printf("throughput %.0f scripts/s, %d failed%n", scripts / (elapsed / 1e9), failures);
+            System.out.printf("latency p50 %.1fus, p99 %.1fus, max %.1fus%n",
+                    percentile(latencies, 0.50) / 1e3, percentile(latencies, 0.99) / 1e3, latencies[scripts - 1] / 1e3);
+        }
+    }
+
+    private static void run(ScriptService service, String[] programs, int scripts, int inFlight) throws InterruptedException {
+        run(service, programs, new long[scripts], inFlight);
+    }
+
+    private static int run(ScriptService service, String[] programs, long[] latencies, int inFlight) throws InterruptedException {
+        Semaphore permits = new Semaphore(inFlight);
+        AtomicInteger failures = new AtomicInteger();
+        for (int i = 0; i < latencies.length; i++) {
+            permits.acquire();
+            int index = i;
+            long submitted = System.nanoTime();
+            service.submit(programs[i % programs.length]).whenComplete((result, error) -> {
+                latencies[index] = System.nanoTime() - submitted;
+                if (error != null) {
+                    failures.incrementAndGet();
+                }
+                permits.release();
+            });
+        }
+        permits.acquire(inFlight);
+        return failures.get();
+    }
+
+    private static long percentile(long[] sorted, double percentile) {
+        return sorted[(int) Math.ceil(percentile * sorted.length) - 1];
+    }
+
+    // a small script summing the first few hundred integers through a
+    // function call, which differs between sources by its bound
+    private static String source(int i) {
+        return "VAR total: Integer = 0; "
+                + "FUN add(n: Integer) DO total = total + n; END "
+                + "FUN main(): Integer DO "
+                + "LET i: Integer = 0; "
+                + "WHILE i < " + (200 + i) + " DO add(i); i = i + 1; END "
+                + "RETURN total; END";
+    }
+
+}
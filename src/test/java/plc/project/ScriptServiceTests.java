@@ -0,0 +1,109 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Tests the {@link ScriptService} with a single worker, so that a script which
+ * doesn't finish holds up every script after it until it's stopped.
+ */
+final class ScriptServiceTests {
+
+    private static final String SUM = "FUN main(): Integer DO LET i: Integer = 0; LET total: Integer = 0; "
+            + "WHILE i < 100 DO i = i + 1; total = total + i; END RETURN total; END";
+    private static final String LOOP = "FUN main() DO WHILE TRUE DO END END";
+    private static final Duration TIMEOUT = Duration.ofMillis(100);
+
+    @Test
+    void testSubmit() throws Exception {
+        try (ScriptService service = new ScriptService(1, TIMEOUT)) {
+            Assertions.assertEquals(BigInteger.valueOf(5050), service.submit(SUM).get(1, TimeUnit.SECONDS).getValue());
+            // the second run uses the cached program
+            Assertions.assertEquals(BigInteger.valueOf(5050), service.submit(SUM).get(1, TimeUnit.SECONDS).getValue());
+        }
+    }
+
+    @Test
+    void testTimeout() throws Exception {
+        try (ScriptService service = new ScriptService(1, TIMEOUT)) {
+            Throwable cause = failure(service.submit(LOOP));
+            Assertions.assertEquals(TimeoutException.class, cause.getClass());
+            Assertions.assertEquals("The script did not finish within 100ms.", cause.getMessage());
+        }
+    }
+
+    @Test
+    void testTimeoutFreesWorker() throws Exception {
+        try (ScriptService service = new ScriptService(1, TIMEOUT)) {
+            long start = System.nanoTime();
+            CompletableFuture<Environment.PlcObject> loop = service.submit(LOOP);
+            CompletableFuture<Environment.PlcObject> sum = service.submit(SUM);
+            Assertions.assertEquals(BigInteger.valueOf(5050), sum.get(2, TimeUnit.SECONDS).getValue());
+            long elapsed = System.nanoTime() - start;
+            // the sum waited for the loop to time out, and not much longer
+            Assertions.assertTrue(elapsed >= TIMEOUT.toNanos(), "Finished after " + elapsed + "ns.");
+            Assertions.assertTrue(elapsed < Duration.ofSeconds(1).toNanos(), "Finished after " + elapsed + "ns.");
+            Assertions.assertTrue(loop.isCompletedExceptionally());
+        }
+    }
+
+    @Test
+    void testCancel() throws Exception {
+        try (ScriptService service = new ScriptService(1, Duration.ofMinutes(1))) {
+            CompletableFuture<Environment.PlcObject> loop = service.submit(LOOP);
+            CompletableFuture<Environment.PlcObject> sum = service.submit(SUM);
+            Thread.sleep(50);
+            Assertions.assertTrue(loop.cancel(true));
+            Assertions.assertThrows(CancellationException.class, loop::join);
+            // the loop was stopped rather than left to run out its timeout
+            Assertions.assertEquals(BigInteger.valueOf(5050), sum.get(2, TimeUnit.SECONDS).getValue());
+        }
+    }
+
+    @Test
+    void testBudget() throws Exception {
+        try (ScriptService service = new ScriptService(1, Duration.ofMinutes(1), Budget.UNLIMITED.withIterations(1000))) {
+            Throwable cause = failure(service.submit(LOOP));
+            Assertions.assertEquals(Budget.Aborted.class, cause.getClass());
+            Assertions.assertEquals("The script exceeded its budget of 1000 loop iterations.", cause.getMessage());
+        }
+    }
+
+    @Test
+    void testParseException() throws Exception {
+        try (ScriptService service = new ScriptService(1, TIMEOUT)) {
+            String source = "FUN main( DO END";
+            Assertions.assertEquals(ParseException.class, failure(service.submit(source)).getClass());
+            Assertions.assertThrows(ParseException.class, () -> service.load(source));
+        }
+    }
+
+    @Test
+    void testCacheSize() {
+        try (ScriptService service = new ScriptService(1, TIMEOUT, Budget.UNLIMITED, 2)) {
+            String first = "FUN main(): Integer DO RETURN 1; END";
+            String second = "FUN main(): Integer DO RETURN 2; END";
+            String third = "FUN main(): Integer DO RETURN 3; END";
+            Assertions.assertSame(service.load(first), service.load(first));
+            Assertions.assertSame(service.load(second), service.load(second));
+            // the cache is full, so the third is compiled each time
+            Assertions.assertNotSame(service.load(third), service.load(third));
+            Assertions.assertSame(service.load(first), service.load(first));
+        }
+    }
+
+    // the error a script failed with, which it must fail with soon
+    private static Throwable failure(CompletableFuture<Environment.PlcObject> result) throws InterruptedException, TimeoutException {
+        ExecutionException exception = Assertions.assertThrows(ExecutionException.class, () -> result.get(2, TimeUnit.SECONDS));
+        return exception.getCause();
+    }
+
+}
@@ -0,0 +1,115 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests the {@link SymbolTable}, including that its keyword ids are the ones
+ * the {@link Parser} dispatches on.
+ */
+final class SymbolTableTests {
+
+    private static final List<String> KEYWORDS = Arrays.asList(
+            "LIST", "VAR", "VAL", "FUN", "DO", "END", "LET", "SWITCH", "CASE",
+            "DEFAULT", "IF", "ELSE", "WHILE", "RETURN", "NIL", "TRUE", "FALSE"
+    );
+
+    @Test
+    void testKeywords() throws IllegalAccessException {
+        // each keyword constant is named after its keyword
+        int constants = 0;
+        for (Field field : SymbolTable.class.getFields()) {
+            if (field.getType() == int.class && Modifier.isStatic(field.getModifiers()) && !field.getName().equals("NONE")) {
+                Assertions.assertEquals(field.getName(), KEYWORDS.get(field.getInt(null)));
+                constants++;
+            }
+        }
+        Assertions.assertEquals(KEYWORDS.size(), constants);
+        SymbolTable symbols = new SymbolTable();
+        for (int i = 0; i < KEYWORDS.size(); i++) {
+            Assertions.assertEquals(i, SymbolTable.keyword(KEYWORDS.get(i)));
+            Assertions.assertEquals(i, symbols.lookup(KEYWORDS.get(i), 0, KEYWORDS.get(i).length()));
+            Assertions.assertEquals(KEYWORDS.get(i), symbols.getName(i));
+            Assertions.assertTrue(SymbolTable.isKeyword(i));
+        }
+        Assertions.assertFalse(SymbolTable.isKeyword(KEYWORDS.size()));
+        Assertions.assertEquals(SymbolTable.NONE, SymbolTable.keyword("main"));
+        Assertions.assertEquals(SymbolTable.NONE, SymbolTable.keyword("fun"));
+    }
+
+    @Test
+    void testLexedKeywords() {
+        // the lexer gives keywords the ids the parser compares them with
+        List<Token> tokens = new Lexer(String.join(" ", KEYWORDS) + " main").lex();
+        for (int i = 0; i < KEYWORDS.size(); i++) {
+            Assertions.assertEquals(i, tokens.get(i).getSymbol());
+        }
+        Assertions.assertEquals(KEYWORDS.size(), tokens.get(KEYWORDS.size()).getSymbol());
+        // a keyword is found by its symbol id in the parser
+        Ast.Source source = new Parser(new Lexer("VAR x: Integer = 1; FUN main() DO END").lex()).parseSource();
+        Assertions.assertEquals(1, source.getGlobals().size());
+        Assertions.assertEquals(1, source.getFunctions().size());
+    }
+
+    @Test
+    void testGrowth() {
+        SymbolTable symbols = new SymbolTable();
+        List<String> names = new ArrayList<>();
+        // enough names to grow the name arrays and rehash the slots several
+        // times
+        for (int i = 0; i < 10_000; i++) {
+            String name = "name" + i;
+            names.add(name);
+            Assertions.assertEquals(KEYWORDS.size() + i, symbols.intern(name));
+        }
+        Assertions.assertEquals(KEYWORDS.size() + names.size(), symbols.size());
+        for (int i = 0; i < names.size(); i++) {
+            String name = names.get(i);
+            Assertions.assertEquals(KEYWORDS.size() + i, symbols.intern(name));
+            Assertions.assertEquals(KEYWORDS.size() + i, symbols.lookup(name, 0, name.length()));
+            Assertions.assertEquals(name, symbols.getName(KEYWORDS.size() + i));
+        }
+        for (int i = 0; i < KEYWORDS.size(); i++) {
+            Assertions.assertEquals(i, symbols.intern(KEYWORDS.get(i)));
+        }
+        Assertions.assertEquals(KEYWORDS.size() + names.size(), symbols.size());
+    }
+
+    @Test
+    void testCollisions() {
+        // these have the same hash, so each probes past the ones before it
+        List<String> names = Arrays.asList("AaAa", "AaBB", "BBAa", "BBBB");
+        SymbolTable symbols = new SymbolTable();
+        for (String name : names) {
+            Assertions.assertEquals(SymbolTable.NONE, symbols.lookup(name, 0, name.length()));
+        }
+        for (int i = 0; i < names.size(); i++) {
+            Assertions.assertEquals(KEYWORDS.size() + i, symbols.intern(names.get(i)));
+        }
+        for (int i = 0; i < names.size(); i++) {
+            Assertions.assertEquals(KEYWORDS.size() + i, symbols.lookup(names.get(i), 0, names.get(i).length()));
+            Assertions.assertEquals(names.get(i), symbols.getName(KEYWORDS.size() + i));
+        }
+        Assertions.assertEquals(SymbolTable.NONE, symbols.lookup("AaAb", 0, 4));
+    }
+
+    @Test
+    void testRange() {
+        SymbolTable symbols = new SymbolTable();
+        // interning part of a larger text only copies that part
+        int symbol = symbols.intern("x = name;", 4, 4);
+        Assertions.assertEquals("name", symbols.getName(symbol));
+        Assertions.assertEquals(symbol, symbols.intern("name"));
+        Assertions.assertEquals(symbol, symbols.lookup("(name)", 1, 4));
+        Assertions.assertEquals(SymbolTable.NONE, symbols.lookup("(name)", 1, 3));
+        Assertions.assertThrows(IndexOutOfBoundsException.class, () -> symbols.getName(symbols.size()));
+        Assertions.assertThrows(IndexOutOfBoundsException.class, () -> symbols.getName(-1));
+    }
+
+}